@@ -0,0 +1,1059 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Local rule engine for the handful of performance issues the model keeps pointing out.
+// The code is lexed just enough to blank out comments and string contents and to find
+// loop bodies, then a few regex rules run per language. No network, so results are instant.
+public class AntiPatternDetector {
+    public enum Rule {
+        STRING_CONCAT_IN_LOOP("String concatenation in a loop"),
+        LINEAR_SEARCH_IN_LOOP("Linear search inside a loop"),
+        LOOP_INVARIANT("Loop-invariant value recomputed every iteration"),
+        BOXING_IN_LOOP("Boxing in a loop"),
+        NESTED_LOOP_LOOKUP("Nested loops that could use a hash lookup");
+
+        private final String title;
+
+        Rule(String title) {
+            this.title = title;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+    }
+
+    // A rule hit at a 1-based line of the snippet, with a canned rewrite
+    public static class Finding {
+        private final Rule rule;
+        private final int line;
+        private final String message;
+        private final String rewrite;
+
+        public Finding(Rule rule, int line, String message, String rewrite) {
+            this.rule = rule;
+            this.line = line;
+            this.message = message;
+            this.rewrite = rewrite;
+        }
+
+        public Rule getRule() {
+            return rule;
+        }
+
+        public int getLine() {
+            return line;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public String getRewrite() {
+            return rewrite;
+        }
+    }
+
+    public static class Report {
+        private final String language;
+        private final List<Finding> findings;
+        private final boolean coversSnippet;
+
+        private Report(String language, List<Finding> findings, boolean coversSnippet) {
+            this.language = language;
+            this.findings = findings;
+            this.coversSnippet = coversSnippet;
+        }
+
+        public List<Finding> getFindings() {
+            return findings;
+        }
+
+        // True when every loop, nested ones included, has a finding and there are no
+        // calls the findings don't account for, i.e. the rules already explain where
+        // the snippet spends its time
+        public boolean coversSnippet() {
+            return coversSnippet;
+        }
+
+        public String toMarkdown() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("## Quick Checks\n\n");
+            if (findings.isEmpty()) {
+                sb.append("No common performance anti-patterns found locally.\n\n");
+                return sb.toString();
+            }
+            for (Finding finding : findings) {
+                sb.append("### Line ").append(finding.getLine()).append(": ")
+                  .append(finding.getRule().getTitle()).append("\n\n");
+                sb.append(finding.getMessage()).append("\n\n");
+                sb.append("```").append(fenceLanguage(language)).append("\n")
+                  .append(finding.getRewrite()).append("\n```\n\n");
+            }
+            return sb.toString();
+        }
+    }
+
+    // A loop found in the snippet; offsets index into the masked code
+    private static class Loop {
+        int start;
+        int bodyStart;
+        int bodyEnd;
+        // Part of the header evaluated on every iteration: a while condition or the
+        // condition and update of for (;;). Empty for for-each headers, which run once.
+        int conditionStart = -1;
+        int conditionEnd = -1;
+        String header = "";
+        // Innermost loop whose body holds this one, set by LoopIndex
+        Loop parent;
+        // Set once a finding explains work in this loop
+        boolean flagged;
+        Set<String> vars = new HashSet<>();
+        Set<String> modified = new HashSet<>();
+    }
+
+    // Answers "which loop is this offset in" in constant time. Each array maps an offset
+    // to the innermost loop covering it, so rules don't walk every loop per match.
+    private static class LoopIndex {
+        final List<Loop> all;
+        private final Loop[] body;
+        private final Loop[] extent;
+        private final Loop[] condition;
+        // Offsets of code that some finding already accounts for
+        private final BitSet explained = new BitSet();
+
+        LoopIndex(List<Loop> loops, int length) {
+            all = loops;
+            body = new Loop[length + 1];
+            extent = new Loop[length + 1];
+            condition = new Loop[length + 1];
+            // Loops are in source order, so a nested loop overwrites the one around it
+            for (Loop loop : loops) {
+                loop.parent = body[loop.start];
+                Arrays.fill(body, loop.bodyStart, loop.bodyEnd, loop);
+                Arrays.fill(extent, loop.start, loop.bodyEnd, loop);
+                if (loop.conditionStart >= 0) {
+                    Arrays.fill(condition, loop.conditionStart, loop.conditionEnd, loop);
+                }
+            }
+        }
+
+        // Innermost loop whose body contains the offset
+        Loop innermostBody(int offset) {
+            return body[offset];
+        }
+
+        // Innermost loop whose header or body contains the offset
+        Loop enclosing(int offset) {
+            return extent[offset];
+        }
+
+        // Innermost loop that evaluates the offset on every iteration: one whose condition
+        // contains it, else the innermost body. A for-each header is only evaluated once,
+        // so it counts against the enclosing loop, if any.
+        Loop invariantScope(int offset) {
+            return condition[offset] != null ? condition[offset] : body[offset];
+        }
+
+        // Record that a finding explains the code from start to end inside this loop
+        void credit(Loop loop, int start, int end) {
+            loop.flagged = true;
+            explained.set(start, end);
+        }
+
+        boolean isExplained(int offset) {
+            return explained.get(offset);
+        }
+    }
+
+    private static final Pattern ASSIGNMENT_PATTERN = Pattern.compile(
+        "(?<![\\w.])(\\w+)\\s*(?:\\[[^\\]]*\\]\\s*)?(?:[-+*/%]|<<|>>)?=(?!=)|(?<![\\w.])(\\w+)\\s*(?:\\+\\+|--)|(?:\\+\\+|--)\\s*(\\w+)");
+    // Changes made through a reference: items.append(x), self.seen.add(x), obj.count = n.
+    // group(1) is the root variable, group(2) the member chain after it.
+    private static final Pattern MUTATING_CALL_PATTERN = Pattern.compile(
+        "(?<![\\w.])(\\w+)((?:\\s*(?:\\.|->)\\s*\\w+|\\[[^\\]]*\\])*)\\s*(?:\\.|->)\\s*"
+        + "(?:append|appendleft|extend|add|addAll|push|push_back|push_front|emplace|emplace_back|insert|put|putAll|"
+        + "putIfAbsent|merge|compute|remove|removeAll|removeIf|retainAll|pop|popleft|clear|sort|reverse|update|"
+        + "set|setdefault|discard|splice|shift|unshift|truncate|drain|retain|erase|resize|fill|offer|poll|delete)\\s*\\(");
+    private static final Pattern FIELD_WRITE_PATTERN = Pattern.compile(
+        "(?<![\\w.])(\\w+)((?:\\s*(?:\\.|->)\\s*\\w+|\\[[^\\]]*\\])+)\\s*(?:(?:[-+*/%]|<<|>>)?=(?!=)|\\+\\+|--)");
+    private static final Pattern CALL_PATTERN = Pattern.compile("(?<![\\w@])(\\w+)!?\\s*\\(");
+    private static final Set<String> NON_CALLS = new HashSet<>(Arrays.asList(
+        "if", "elif", "while", "for", "switch", "match", "catch", "except", "with", "return", "yield",
+        "sizeof", "typeof", "synchronized", "and", "or", "not", "in", "is", "lambda", "await"
+    ));
+    // Constant-time accessors and range helpers that cannot be where a loop spends its time
+    private static final Set<String> CHEAP_CALLS = new HashSet<>(Arrays.asList(
+        "len", "length", "size", "charAt", "abs", "min", "max", "range", "enumerate", "iter",
+        "chars", "begin", "end"
+    ));
+    private static final Pattern IDENTIFIER_PATTERN = Pattern.compile("\\b[A-Za-z_]\\w*\\b");
+    private static final Set<String> NON_VARIABLES = new HashSet<>(Arrays.asList(
+        "auto", "const", "let", "var", "mut", "ref", "final", "int", "long", "double", "float",
+        "char", "short", "byte", "boolean", "bool", "size_t", "unsigned", "signed", "String",
+        "Integer", "Long", "Double", "in", "of", "and", "or", "not", "is", "true", "false",
+        "True", "False", "None", "null", "this", "self", "new", "std", "string"
+    ));
+
+    public Report analyze(String code, String language) {
+        String masked = mask(code, language);
+        int[] lineStarts = lineStarts(masked);
+        LoopIndex loops = new LoopIndex("Python".equals(language) ? findPythonLoops(masked, lineStarts) : findBraceLoops(masked, language),
+                                        masked.length());
+
+        // Keyed by rule and line so one construct is only reported once
+        Map<String, Finding> findings = new LinkedHashMap<>();
+        checkStringConcat(masked, language, loops, lineStarts, findings);
+        checkLinearSearch(masked, language, loops, lineStarts, findings);
+        checkLoopInvariants(masked, language, loops, lineStarts, findings);
+        checkBoxing(masked, language, loops, lineStarts, findings);
+        checkNestedLookups(masked, language, loops, lineStarts, findings);
+
+        List<Finding> sorted = new ArrayList<>(findings.values());
+        sorted.sort((a, b) -> a.getLine() != b.getLine()
+                ? Integer.compare(a.getLine(), b.getLine())
+                : a.getRule().compareTo(b.getRule()));
+
+        return new Report(language, sorted, coversSnippet(masked, loops));
+    }
+
+    // ---- Rules ----
+
+    private void checkStringConcat(String code, String language, LoopIndex loops, int[] lineStarts,
+                                   Map<String, Finding> findings) {
+        // Patterns mapped to the variable names they apply to; null applies to any match
+        Map<Pattern, Set<String>> patterns = new LinkedHashMap<>();
+        switch (language) {
+            case "Java":
+                patterns.put(Pattern.compile("(?<![\\w.])(\\w+)\\s*(?:\\+=|=\\s*\\1\\s*\\+)"),
+                             declared(code, "\\bString\\s+(\\w+)\\s*[=;]"));
+                patterns.put(Pattern.compile("(?<![\\w.])\\w+\\s*\\+=\\s*\""), null);
+                break;
+            case "Python":
+                patterns.put(Pattern.compile("(?<![\\w.])(\\w+)\\s*(?:\\+=|=\\s*\\1\\s*\\+)"),
+                             declared(code, "(?m)^\\s*(\\w+)\\s*=\\s*(?:[rbf]?[\"']|str\\()"));
+                patterns.put(Pattern.compile("(?<![\\w.])\\w+\\s*\\+=\\s*(?:[rf]?[\"']|str\\()"), null);
+                break;
+            case "C++":
+                // += on std::string is amortized; s = s + x copies the whole string each time
+                patterns.put(Pattern.compile("(?<![\\w.])(\\w+)\\s*=\\s*\\1\\s*\\+"),
+                             declared(code, "\\b(?:std::)?string\\s+(\\w+)\\b"));
+                break;
+            case "C":
+                patterns.put(Pattern.compile("\\bstrn?cat\\s*\\("), null);
+                break;
+            case "Rust":
+                patterns.put(Pattern.compile("(?<![\\w.])(\\w+)\\s*=\\s*format!\\s*\\(\\s*\"[^\"]*\"\\s*,\\s*&?\\1\\b"), null);
+                patterns.put(Pattern.compile("(?<![\\w.])(\\w+)\\s*=\\s*\\1\\s*\\+\\s*&"), null);
+                break;
+            default:
+                // JavaScript engines build strings with ropes, so += in a loop is cheap there
+                return;
+        }
+
+        for (Map.Entry<Pattern, Set<String>> entry : patterns.entrySet()) {
+            Matcher matcher = entry.getKey().matcher(code);
+            while (matcher.find()) {
+                Loop loop = loops.innermostBody(matcher.start());
+                if (loop == null || !appliesTo(matcher, entry.getValue())) {
+                    continue;
+                }
+                loops.credit(loop, matcher.start(), matcher.end());
+                add(findings, Rule.STRING_CONCAT_IN_LOOP, lineOf(lineStarts, matcher.start()),
+                    stringConcatMessage(language), stringConcatRewrite(language));
+            }
+        }
+    }
+
+    private void checkLinearSearch(String code, String language, LoopIndex loops, int[] lineStarts,
+                                   Map<String, Finding> findings) {
+        // Patterns mapped to the variable names they apply to; null applies to any match
+        Map<Pattern, Set<String>> patterns = new LinkedHashMap<>();
+        switch (language) {
+            case "Java":
+                patterns.put(Pattern.compile("(?<![\\w.])(\\w+)\\s*\\.\\s*(?:contains|indexOf|lastIndexOf|remove)\\s*\\("),
+                             declared(code, "\\b(?:List|ArrayList|LinkedList|Collection)\\s*<[^;=(){}]*>\\s+(\\w+)\\b"));
+                patterns.put(Pattern.compile("\\bArrays\\.asList\\s*\\([^;]*\\)\\s*\\.\\s*contains\\s*\\("), null);
+                patterns.put(Pattern.compile("\\.stream\\(\\)\\s*\\.\\s*(?:anyMatch|noneMatch|filter)\\s*\\("), null);
+                break;
+            case "Python":
+                Set<String> notLists = declared(code, "(?m)^\\s*(\\w+)\\s*=\\s*(?:\\{|set\\(|frozenset\\(|dict\\(|Counter\\(|defaultdict\\(|[rbf]?[\"'])");
+                Matcher in = Pattern.compile("\\bin\\s+(\\w+)\\b(?!\\s*[(.\\[])").matcher(code);
+                // The in of a for clause, in a loop header or a comprehension, iterates instead of searching
+                Pattern forClause = Pattern.compile("\\bfor\\s+(?:(?!\\bin\\b)[\\w\\s,()\\[\\]])*$");
+                while (in.find()) {
+                    int lineStart = code.lastIndexOf('\n', in.start()) + 1;
+                    if (forClause.matcher(code.substring(lineStart, in.start())).find()) {
+                        continue;
+                    }
+                    Loop loop = loops.innermostBody(in.start(1));
+                    if (loop != null && !notLists.contains(in.group(1))) {
+                        loops.credit(loop, in.start(), in.end());
+                        add(findings, Rule.LINEAR_SEARCH_IN_LOOP, lineOf(lineStarts, in.start(1)),
+                            "`in " + in.group(1) + "` scans the whole list on every iteration, making the loop O(n*m).",
+                            linearSearchRewrite(language, in.group(1)));
+                    }
+                }
+                patterns.put(Pattern.compile("(?<![\\w.])\\w+\\s*\\.\\s*(?:index|count)\\s*\\("), null);
+                break;
+            case "JavaScript":
+                patterns.put(Pattern.compile("(?<![\\w.])(\\w+)\\s*\\.\\s*(?:includes|indexOf|lastIndexOf)\\s*\\("),
+                             declared(code, "\\b(?:const|let|var)\\s+(\\w+)\\s*=\\s*(?:\\[|Array\\.from\\(|new\\s+Array\\b)"));
+                patterns.put(Pattern.compile("\\.\\s*(?:find|findIndex|some)\\s*\\("), null);
+                break;
+            case "C++":
+                patterns.put(Pattern.compile("\\b(?:std::)?(?:find|count)(?:_if)?\\s*\\(\\s*\\w+\\s*\\.\\s*c?begin\\s*\\("), null);
+                break;
+            case "Rust":
+                patterns.put(Pattern.compile("(?<![\\w.])(\\w+)\\s*\\.\\s*contains\\s*\\("),
+                             declared(code, "\\b(\\w+)\\s*(?::\\s*&?(?:mut\\s+)?(?:Vec\\s*<|\\[)|=\\s*(?:vec!|Vec::))"));
+                patterns.put(Pattern.compile("\\.iter\\(\\)\\s*\\.\\s*(?:any|position|find)\\s*\\("), null);
+                break;
+            default:
+                // C has no library search; hand-written scans are caught as nested loops
+                return;
+        }
+
+        for (Map.Entry<Pattern, Set<String>> entry : patterns.entrySet()) {
+            Matcher matcher = entry.getKey().matcher(code);
+            while (matcher.find()) {
+                Loop loop = loops.innermostBody(matcher.start());
+                if (loop == null || !appliesTo(matcher, entry.getValue())) {
+                    continue;
+                }
+                loops.credit(loop, matcher.start(), matcher.end());
+                String target = receiver(code, matcher.start(), matcher.end());
+                add(findings, Rule.LINEAR_SEARCH_IN_LOOP, lineOf(lineStarts, matcher.start()),
+                    "This search walks the collection on every iteration, making the loop O(n*m).",
+                    linearSearchRewrite(language, target));
+            }
+        }
+    }
+
+    private void checkLoopInvariants(String code, String language, LoopIndex loops, int[] lineStarts,
+                                     Map<String, Finding> findings) {
+        // Calls that are expensive to repeat whatever their arguments
+        Pattern always;
+        // Pure calls; group(1) holds the arguments
+        Pattern pure;
+        // Methods that build a new value from their receiver; group(1) is the receiver
+        Pattern derived;
+        switch (language) {
+            case "Java":
+                always = Pattern.compile("\\bPattern\\s*\\.\\s*compile\\s*\\(");
+                pure = Pattern.compile("\\bMath\\.(?:sqrt|pow|log|log10|exp|cbrt)\\s*\\(([^()]*)\\)");
+                derived = Pattern.compile("(?<![\\w.])(\\w+)\\.(?:toLowerCase|toUpperCase|trim|toCharArray|split|getBytes)\\s*\\(");
+                break;
+            case "Python":
+                always = Pattern.compile("\\bre\\s*\\.\\s*compile\\s*\\(");
+                pure = Pattern.compile("\\b(?:math\\.(?:sqrt|pow|log|exp)|sorted|set|list)\\s*\\(([^()]*)\\)");
+                derived = Pattern.compile("(?<![\\w.])(\\w+)\\.(?:lower|upper|strip|split)\\s*\\(");
+                break;
+            case "JavaScript":
+                always = Pattern.compile("\\bnew\\s+RegExp\\s*\\(");
+                pure = Pattern.compile("\\b(?:Math\\.(?:sqrt|pow|log|exp)|Object\\.(?:keys|values|entries))\\s*\\(([^()]*)\\)");
+                derived = Pattern.compile("(?<![\\w.])(\\w+)\\.(?:toLowerCase|toUpperCase|trim|split)\\s*\\(");
+                break;
+            case "Rust":
+                always = Pattern.compile("\\bRegex::new\\s*\\(");
+                // Rust math is method syntax, so group(1) is the receiver: n.sqrt()
+                pure = Pattern.compile("(?<![\\w.])(\\w+)\\s*\\.\\s*(?:sqrt|powi|powf|ln|log10)\\s*\\(");
+                derived = Pattern.compile("(?<![\\w.])(\\w+)\\.(?:to_lowercase|to_uppercase|to_string|to_vec|to_owned)\\s*\\(");
+                break;
+            default:
+                // C and C++
+                always = null;
+                pure = Pattern.compile("\\b(?:std::)?(?:strlen|sqrt|pow|log|exp)\\s*\\(([^()]*)\\)");
+                derived = null;
+                break;
+        }
+
+        if (always != null) {
+            Matcher matcher = always.matcher(code);
+            while (matcher.find()) {
+                Loop loop = loops.invariantScope(matcher.start());
+                if (loop != null) {
+                    loops.credit(loop, matcher.start(), matcher.end());
+                    add(findings, Rule.LOOP_INVARIANT, lineOf(lineStarts, matcher.start()),
+                        "The pattern is compiled again on every iteration. Compile it once before the loop.",
+                        invariantRewrite(language));
+                }
+            }
+        }
+
+        Matcher matcher = pure.matcher(code);
+        while (matcher.find()) {
+            Loop loop = loops.invariantScope(matcher.start());
+            if (loop != null && isInvariant(matcher.group(1), loop)) {
+                loops.credit(loop, matcher.start(), matcher.end());
+                String call = code.substring(matcher.start(), matcher.end());
+                if (call.endsWith("(")) {
+                    call += ")";
+                }
+                add(findings, Rule.LOOP_INVARIANT, lineOf(lineStarts, matcher.start()),
+                    "`" + call + "` does not depend on anything the loop changes but is recomputed every iteration"
+                    + (call.contains("strlen") ? ", which makes the loop O(n^2)" : "") + ". Compute it once before the loop.",
+                    invariantRewrite(language));
+            }
+        }
+
+        if (derived != null) {
+            matcher = derived.matcher(code);
+            while (matcher.find()) {
+                Loop loop = loops.invariantScope(matcher.start());
+                if (loop != null && isInvariant(matcher.group(1), loop)) {
+                    loops.credit(loop, matcher.start(), matcher.end());
+                    add(findings, Rule.LOOP_INVARIANT, lineOf(lineStarts, matcher.start()),
+                        "`" + matcher.group(1) + "` does not change inside the loop, so this builds the same value every iteration. "
+                        + "Compute it once before the loop.",
+                        invariantRewrite(language));
+                }
+            }
+        }
+    }
+
+    private void checkBoxing(String code, String language, LoopIndex loops, int[] lineStarts,
+                             Map<String, Finding> findings) {
+        // Only Java boxes primitives implicitly among the supported languages
+        if (!"Java".equals(language)) {
+            return;
+        }
+
+        // Patterns mapped to the variable names they apply to; null applies to any match
+        Map<Pattern, Set<String>> patterns = new LinkedHashMap<>();
+        patterns.put(Pattern.compile("(?<![\\w.])(\\w+)\\s*(?:\\+\\+|--|[-+*/%]=|=\\s*\\1\\s*[-+*/%])|(?:\\+\\+|--)\\s*(\\w+)\\b"),
+                     declared(code, "\\b(?:Integer|Long|Double|Float|Short|Byte|Character)\\s+(\\w+)\\s*[=;]"));
+        // map.put(key, map.get(key) + 1) unboxes and re-boxes the count each time
+        patterns.put(Pattern.compile("(?<![\\w.])(\\w+)\\.put\\s*\\([^,]+,\\s*\\1\\.get(?:OrDefault)?\\s*\\("), null);
+
+        for (Map.Entry<Pattern, Set<String>> entry : patterns.entrySet()) {
+            Matcher matcher = entry.getKey().matcher(code);
+            while (matcher.find()) {
+                Loop loop = loops.innermostBody(matcher.start());
+                if (loop == null || !appliesTo(matcher, entry.getValue())) {
+                    continue;
+                }
+                loops.credit(loop, matcher.start(), matcher.end());
+                add(findings, Rule.BOXING_IN_LOOP, lineOf(lineStarts, matcher.start()),
+                    "Each update unboxes the wrapper and allocates a new one. Use a primitive in the loop.",
+                    "int total = 0;               // primitive, not Integer\n"
+                    + "for (int value : values) {\n"
+                    + "    total += value;\n"
+                    + "}\n"
+                    + "// For counting: map.merge(key, 1, Integer::sum) or an int[] indexed by key");
+            }
+        }
+    }
+
+    private void checkNestedLookups(String code, String language, LoopIndex loops, int[] lineStarts,
+                                    Map<String, Finding> findings) {
+        Pattern comparison = Pattern.compile("(?m)^.*(?:===?|\\.equals\\s*\\(|\\bstrcmp\\s*\\().*$");
+        for (Loop inner : loops.all) {
+            if (inner.vars.isEmpty()) {
+                continue;
+            }
+            Set<String> outerVars = new HashSet<>();
+            for (Loop outer = inner.parent; outer != null; outer = outer.parent) {
+                outerVars.addAll(outer.vars);
+            }
+            if (outerVars.isEmpty()) {
+                continue;
+            }
+
+            Matcher matcher = comparison.matcher(code);
+            matcher.region(inner.bodyStart, inner.bodyEnd);
+            while (matcher.find()) {
+                Set<String> identifiers = identifiers(matcher.group());
+                if (!containsAny(identifiers, inner.vars) || !containsAny(identifiers, outerVars)) {
+                    continue;
+                }
+                // The finding explains the pair: the inner search and the loop driving it
+                loops.credit(inner, matcher.start(), matcher.end());
+                inner.parent.flagged = true;
+                add(findings, Rule.NESTED_LOOP_LOOKUP, lineOf(lineStarts, matcher.start()),
+                    "The inner loop searches for a match of the outer element, making this O(n*m). "
+                    + "Index one side in a hash set or map first for O(n+m).",
+                    nestedLookupRewrite(language));
+                // One report per inner loop is enough
+                break;
+            }
+        }
+    }
+
+    // ---- Lexing ----
+
+    // Blank out comments and the contents of string literals so rules only see code.
+    // Quotes and newlines are kept, so offsets and line numbers stay the same.
+    String mask(String code, String language) {
+        boolean python = "Python".equals(language);
+        char[] out = code.toCharArray();
+        int i = 0;
+        while (i < out.length) {
+            char c = code.charAt(i);
+            if (python ? c == '#' : code.startsWith("//", i)) {
+                while (i < out.length && code.charAt(i) != '\n') {
+                    out[i++] = ' ';
+                }
+            } else if (!python && code.startsWith("/*", i)) {
+                int end = code.indexOf("*/", i + 2);
+                end = end < 0 ? out.length : end + 2;
+                blank(out, i, end);
+                i = end;
+            } else if (python && (code.startsWith("\"\"\"", i) || code.startsWith("'''", i))) {
+                int end = code.indexOf(code.substring(i, i + 3), i + 3);
+                end = end < 0 ? out.length : end + 3;
+                blank(out, i + 3, end - 3);
+                i = end;
+            } else if (c == '"' || (c == '`' && "JavaScript".equals(language))
+                       || (c == '\'' && (!"Rust".equals(language) || isRustCharLiteral(code, i)))) {
+                int end = i + 1;
+                while (end < out.length && code.charAt(end) != c && (c == '`' || code.charAt(end) != '\n')) {
+                    if (code.charAt(end) == '\\') {
+                        end++;
+                    }
+                    end++;
+                }
+                end = Math.min(end, out.length - 1);
+                blank(out, i + 1, end);
+                i = end + 1;
+            } else {
+                i++;
+            }
+        }
+        return new String(out);
+    }
+
+    private void blank(char[] chars, int from, int to) {
+        for (int i = from; i < to && i < chars.length; i++) {
+            if (chars[i] != '\n') {
+                chars[i] = ' ';
+            }
+        }
+    }
+
+    // 'a' and '\n' are char literals; 'a in generics is a lifetime
+    private boolean isRustCharLiteral(String code, int i) {
+        if (i + 2 < code.length() && code.charAt(i + 1) != '\\' && code.charAt(i + 2) == '\'') {
+            return true;
+        }
+        return i + 1 < code.length() && code.charAt(i + 1) == '\\';
+    }
+
+    // Loops in languages with braces: for/while/do headers followed by a block or a single statement
+    private List<Loop> findBraceLoops(String code, String language) {
+        List<Loop> loops = new ArrayList<>();
+        Pattern keyword = Pattern.compile("Rust".equals(language) ? "\\b(for|while|loop)\\b" : "\\b(for|while|do)\\b");
+        Matcher matcher = keyword.matcher(code);
+        while (matcher.find()) {
+            if ("Rust".equals(language) && "for".equals(matcher.group(1)) && isRustTypeFor(code, matcher.start(), matcher.end())) {
+                continue;
+            }
+            Loop loop = new Loop();
+            loop.start = matcher.start();
+            int pos = skipWhitespace(code, matcher.end());
+            int open = -1;
+            if (pos < code.length() && code.charAt(pos) == '(') {
+                open = pos;
+                pos = matchingClose(code, pos, '(', ')') + 1;
+                if (pos <= 0) {
+                    continue;
+                }
+            }
+
+            // The body is the first block, or a single statement when no block comes first
+            int brace = code.indexOf('{', pos);
+            int semicolon = code.indexOf(';', pos);
+            int headerEnd;
+            if (brace >= 0 && (semicolon < 0 || brace < semicolon)) {
+                headerEnd = brace;
+                int close = matchingClose(code, brace, '{', '}');
+                loop.header = code.substring(matcher.end(), brace);
+                loop.bodyStart = brace + 1;
+                loop.bodyEnd = close < 0 ? code.length() : close;
+            } else if (semicolon >= 0) {
+                headerEnd = pos;
+                loop.header = code.substring(matcher.end(), pos);
+                loop.bodyStart = pos;
+                loop.bodyEnd = semicolon + 1;
+                // The while (...); that closes a do-while has no body of its own
+                if (code.substring(pos, semicolon).trim().isEmpty()) {
+                    continue;
+                }
+            } else {
+                continue;
+            }
+
+            if ("while".equals(matcher.group(1))) {
+                loop.conditionStart = matcher.end();
+                loop.conditionEnd = headerEnd;
+            } else if ("for".equals(matcher.group(1)) && open >= 0) {
+                int firstClause = code.indexOf(';', open);
+                if (firstClause >= 0 && firstClause < pos) {
+                    loop.conditionStart = firstClause + 1;
+                    loop.conditionEnd = pos;
+                }
+            }
+
+            loop.vars = braceLoopVariables(loop.header, language);
+            finishLoop(code, loop);
+            loops.add(loop);
+        }
+        return loops;
+    }
+
+    // impl Trait for Type and for<'a> bounds use the keyword without looping
+    private boolean isRustTypeFor(String code, int start, int end) {
+        int next = skipWhitespace(code, end);
+        if (next < code.length() && code.charAt(next) == '<') {
+            return true;
+        }
+        int statement = start;
+        while (statement > 0 && ";{}".indexOf(code.charAt(statement - 1)) < 0) {
+            statement--;
+        }
+        return Pattern.compile("\\bimpl\\b").matcher(code.substring(statement, start)).find();
+    }
+
+    // Python loops: the body is every following line indented deeper than the header
+    private List<Loop> findPythonLoops(String code, int[] lineStarts) {
+        List<Loop> loops = new ArrayList<>();
+        String[] lines = code.split("\n", -1);
+        Pattern header = Pattern.compile("^(\\s*)(?:async\\s+)?(for|while)\\b(.*):(.*)$");
+
+        for (int i = 0; i < lines.length; i++) {
+            Matcher matcher = header.matcher(lines[i]);
+            if (!matcher.matches()) {
+                continue;
+            }
+            Loop loop = new Loop();
+            loop.start = lineStarts[i] + matcher.start(2);
+            loop.header = matcher.group(3);
+
+            if (!matcher.group(4).trim().isEmpty()) {
+                // for x in xs: body on the same line
+                loop.bodyStart = lineStarts[i] + matcher.start(4);
+                loop.bodyEnd = lineStarts[i] + lines[i].length();
+            } else {
+                int indent = matcher.group(1).length();
+                int last = i;
+                for (int j = i + 1; j < lines.length; j++) {
+                    if (lines[j].trim().isEmpty()) {
+                        continue;
+                    }
+                    if (indentation(lines[j]) <= indent) {
+                        break;
+                    }
+                    last = j;
+                }
+                if (last == i) {
+                    continue;
+                }
+                loop.bodyStart = lineStarts[i + 1];
+                loop.bodyEnd = lineStarts[last] + lines[last].length();
+            }
+
+            if ("for".equals(matcher.group(2))) {
+                int in = loop.header.indexOf(" in ");
+                if (in >= 0) {
+                    loop.vars = identifiers(loop.header.substring(0, in));
+                }
+            } else {
+                loop.conditionStart = lineStarts[i] + matcher.start(3);
+                loop.conditionEnd = lineStarts[i] + matcher.end(3);
+            }
+            finishLoop(code, loop);
+            loops.add(loop);
+        }
+        return loops;
+    }
+
+    // Variables a loop header introduces or steps: for (int i = 0; ...; i++), for (T x : xs),
+    // for (const x of xs), for x in xs (Rust)
+    private Set<String> braceLoopVariables(String header, String language) {
+        String inner = header.trim();
+        if (inner.startsWith("(") && inner.endsWith(")")) {
+            inner = inner.substring(1, inner.length() - 1);
+        }
+
+        if ("Rust".equals(language)) {
+            int in = inner.indexOf(" in ");
+            return in >= 0 ? identifiers(inner.substring(0, in)) : new HashSet<>();
+        }
+
+        Matcher forEach = Pattern.compile("^(.*?)(?:(?<!:):(?!:)|\\s(?:of|in)\\s)").matcher(inner);
+        if (!inner.contains(";") && forEach.find()) {
+            String declaration = forEach.group(1).trim();
+            // Structured bindings: auto& [key, value] : map
+            int bracket = declaration.indexOf('[');
+            if (bracket >= 0) {
+                return identifiers(declaration.substring(bracket));
+            }
+            Matcher last = Pattern.compile("(\\w+)\\s*$").matcher(declaration);
+            Set<String> vars = new HashSet<>();
+            if (last.find()) {
+                vars.add(last.group(1));
+            }
+            return vars;
+        }
+
+        Set<String> vars = new HashSet<>();
+        String[] clauses = inner.split(";", -1);
+        if (clauses.length == 3) {
+            Matcher assigned = ASSIGNMENT_PATTERN.matcher(clauses[0] + ";" + clauses[2]);
+            while (assigned.find()) {
+                vars.add(firstGroup(assigned));
+            }
+        }
+        return vars;
+    }
+
+    // Record what the loop changes, so invariant checks know what to leave alone
+    private void finishLoop(String code, Loop loop) {
+        loop.modified.addAll(loop.vars);
+        Matcher assigned = ASSIGNMENT_PATTERN.matcher(code);
+        assigned.region(loop.start, loop.bodyEnd);
+        while (assigned.find()) {
+            loop.modified.add(firstGroup(assigned));
+        }
+        // A mutated object counts as changed, along with every member named on the way to it
+        for (Pattern pattern : Arrays.asList(MUTATING_CALL_PATTERN, FIELD_WRITE_PATTERN)) {
+            Matcher mutated = pattern.matcher(code);
+            mutated.region(loop.start, loop.bodyEnd);
+            while (mutated.find()) {
+                loop.modified.add(mutated.group(1));
+                loop.modified.addAll(identifiers(mutated.group(2)));
+            }
+        }
+        loop.vars.removeAll(NON_VARIABLES);
+    }
+
+    // ---- Helpers ----
+
+    // True when the findings explain every loop, nested ones included, and the snippet
+    // does no other work the rules cannot see: no call outside the loops, no call inside
+    // them that is neither part of a finding nor trivially cheap, and no recursion
+    private boolean coversSnippet(String code, LoopIndex loops) {
+        if (loops.all.isEmpty()) {
+            return false;
+        }
+        for (Loop loop : loops.all) {
+            if (!loop.flagged) {
+                return false;
+            }
+        }
+
+        Set<String> functions = new HashSet<>();
+        Map<String, List<Integer>> calls = new LinkedHashMap<>();
+        Matcher matcher = CALL_PATTERN.matcher(code);
+        while (matcher.find()) {
+            String name = matcher.group(1);
+            if (NON_CALLS.contains(name)) {
+                continue;
+            }
+            if (isDeclaration(code, matcher.start(), matcher.end() - 1)) {
+                functions.add(name);
+            } else {
+                calls.computeIfAbsent(name, k -> new ArrayList<>()).add(matcher.start(1));
+            }
+        }
+
+        for (Map.Entry<String, List<Integer>> entry : calls.entrySet()) {
+            // fib(n - 1) + fib(n - 2)
+            if (functions.contains(entry.getKey())) {
+                return false;
+            }
+            for (int offset : entry.getValue()) {
+                if (loops.enclosing(offset) == null) {
+                    return false;
+                }
+                if (!loops.isExplained(offset) && !CHEAP_CALLS.contains(entry.getKey())) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // def f(, fn f(, function f(, or a parameter list followed by a body or return type
+    private boolean isDeclaration(String code, int nameStart, int open) {
+        String before = code.substring(code.lastIndexOf('\n', nameStart) + 1, nameStart);
+        if (Pattern.compile("\\b(?:def|fn|function|class)\\s+$").matcher(before).find()) {
+            return true;
+        }
+        int close = matchingClose(code, open, '(', ')');
+        if (close < 0) {
+            return false;
+        }
+        int next = skipWhitespace(code, close + 1);
+        String after = code.substring(next, Math.min(code.length(), next + 8));
+        return after.startsWith("{") || after.startsWith("->") || after.startsWith("throws")
+               || after.startsWith("const") || after.startsWith("noexcept") || after.startsWith("override");
+    }
+
+    // Invariant when the expression names at least one variable and the loop changes none of them
+    private boolean isInvariant(String expression, Loop loop) {
+        Set<String> names = identifiers(expression);
+        names.removeAll(NON_VARIABLES);
+        return !names.isEmpty() && !containsAny(names, loop.modified);
+    }
+
+    // A pattern keyed to declared variables only counts when its variable is one of them
+    private boolean appliesTo(Matcher matcher, Set<String> names) {
+        return names == null || names.contains(firstGroup(matcher));
+    }
+
+    private Set<String> declared(String code, String regex) {
+        Set<String> names = new HashSet<>();
+        Matcher matcher = Pattern.compile(regex).matcher(code);
+        while (matcher.find()) {
+            names.add(matcher.group(1));
+        }
+        return names;
+    }
+
+    private Set<String> identifiers(String text) {
+        Set<String> names = new HashSet<>();
+        Matcher matcher = IDENTIFIER_PATTERN.matcher(text);
+        while (matcher.find()) {
+            names.add(matcher.group());
+        }
+        return names;
+    }
+
+    private boolean containsAny(Set<String> names, Set<String> candidates) {
+        for (String name : candidates) {
+            if (names.contains(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // The collection a search runs over, e.g. "names" in names.contains(x),
+    // std::find(names.begin(), ...) or names.iter().any(...); "items" when unclear
+    private String receiver(String code, int start, int end) {
+        String match = code.substring(start, end);
+        Matcher begin = Pattern.compile("(\\w+)\\s*\\.\\s*c?begin").matcher(match);
+        if (begin.find()) {
+            return begin.group(1);
+        }
+        Matcher name = match.startsWith(".")
+                ? Pattern.compile("(\\w+)\\s*$").matcher(code.substring(code.lastIndexOf('\n', start) + 1, start))
+                : Pattern.compile("^(\\w+)").matcher(match);
+        if (name.find() && Character.isLowerCase(name.group(1).charAt(0))) {
+            return name.group(1);
+        }
+        return "items";
+    }
+
+    private String firstGroup(Matcher matcher) {
+        for (int g = 1; g <= matcher.groupCount(); g++) {
+            if (matcher.group(g) != null) {
+                return matcher.group(g);
+            }
+        }
+        return matcher.group();
+    }
+
+    private int matchingClose(String code, int open, char openChar, char closeChar) {
+        int depth = 0;
+        for (int i = open; i < code.length(); i++) {
+            if (code.charAt(i) == openChar) {
+                depth++;
+            } else if (code.charAt(i) == closeChar && --depth == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int skipWhitespace(String code, int pos) {
+        while (pos < code.length() && Character.isWhitespace(code.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private int indentation(String line) {
+        int count = 0;
+        while (count < line.length() && (line.charAt(count) == ' ' || line.charAt(count) == '\t')) {
+            count++;
+        }
+        return count;
+    }
+
+    private int[] lineStarts(String code) {
+        List<Integer> starts = new ArrayList<>();
+        starts.add(0);
+        for (int i = 0; i < code.length(); i++) {
+            if (code.charAt(i) == '\n') {
+                starts.add(i + 1);
+            }
+        }
+        int[] result = new int[starts.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = starts.get(i);
+        }
+        return result;
+    }
+
+    // 1-based line containing the offset
+    private int lineOf(int[] lineStarts, int offset) {
+        int index = Arrays.binarySearch(lineStarts, offset);
+        return (index >= 0 ? index : -index - 2) + 1;
+    }
+
+    private void add(Map<String, Finding> findings, Rule rule, int line, String message, String rewrite) {
+        findings.putIfAbsent(rule + ":" + line, new Finding(rule, line, message, rewrite));
+    }
+
+    // ---- Canned rewrites ----
+
+    private static String fenceLanguage(String language) {
+        switch (language) {
+            case "C++":
+                return "cpp";
+            default:
+                return language.toLowerCase();
+        }
+    }
+
+    private String stringConcatMessage(String language) {
+        if ("C".equals(language)) {
+            return "strcat walks the whole destination string to find its end on every call, making the loop O(n^2).";
+        }
+        return "Each concatenation copies the whole string built so far, making the loop O(n^2).";
+    }
+
+    private String stringConcatRewrite(String language) {
+        switch (language) {
+            case "Java":
+                return "StringBuilder sb = new StringBuilder();\n"
+                     + "for (String part : parts) {\n"
+                     + "    sb.append(part);\n"
+                     + "}\n"
+                     + "String result = sb.toString();";
+            case "Python":
+                return "pieces = []\n"
+                     + "for part in parts:\n"
+                     + "    pieces.append(part)\n"
+                     + "result = \"\".join(pieces)";
+            case "C++":
+                return "std::string result;\n"
+                     + "result.reserve(expectedLength);\n"
+                     + "for (const auto& part : parts) {\n"
+                     + "    result += part;  // appends in place\n"
+                     + "}";
+            case "C":
+                return "char *end = buffer;\n"
+                     + "for (size_t i = 0; i < count; i++) {\n"
+                     + "    size_t len = strlen(parts[i]);\n"
+                     + "    memcpy(end, parts[i], len);\n"
+                     + "    end += len;\n"
+                     + "}\n"
+                     + "*end = '\\0';";
+            default:
+                return "let mut result = String::with_capacity(expected_len);\n"
+                     + "for part in &parts {\n"
+                     + "    result.push_str(part);\n"
+                     + "}";
+        }
+    }
+
+    private String linearSearchRewrite(String language, String target) {
+        switch (language) {
+            case "Java":
+                return "Set<T> lookup = new HashSet<>(" + target + ");  // build once, before the loop\n"
+                     + "for (T item : items) {\n"
+                     + "    if (lookup.contains(item)) { ... }    // O(1)\n"
+                     + "}";
+            case "Python":
+                return "lookup = set(" + target + ")  # build once, before the loop\n"
+                     + "for item in items:\n"
+                     + "    if item in lookup:  # O(1)\n"
+                     + "        ...";
+            case "JavaScript":
+                return "const lookup = new Set(" + target + ");  // build once, before the loop\n"
+                     + "for (const item of items) {\n"
+                     + "    if (lookup.has(item)) { ... }  // O(1)\n"
+                     + "}";
+            case "C++":
+                return "std::unordered_set<T> lookup(" + target + ".begin(), " + target + ".end());\n"
+                     + "for (const auto& item : items) {\n"
+                     + "    if (lookup.count(item)) { ... }  // O(1)\n"
+                     + "}";
+            default:
+                return "let lookup: HashSet<_> = " + target + ".iter().collect();  // build once\n"
+                     + "for item in &items {\n"
+                     + "    if lookup.contains(item) { ... }  // O(1)\n"
+                     + "}";
+        }
+    }
+
+    private String invariantRewrite(String language) {
+        switch (language) {
+            case "Java":
+                return "final double limit = Math.sqrt(n);   // or the compiled Pattern, lower-cased string, ...\n"
+                     + "for (int i = 2; i <= limit; i++) { ... }";
+            case "Python":
+                return "limit = math.isqrt(n)  # or the compiled regex, set(...), lower-cased string, ...\n"
+                     + "for i in range(2, limit + 1):\n"
+                     + "    ...";
+            case "JavaScript":
+                return "const limit = Math.sqrt(n);  // or the RegExp, Object.keys(...), ...\n"
+                     + "for (let i = 2; i <= limit; i++) { ... }";
+            case "Rust":
+                return "let re = Regex::new(pattern).unwrap();  // or the converted string, ...\n"
+                     + "for line in &lines {\n"
+                     + "    if re.is_match(line) { ... }\n"
+                     + "}";
+            default:
+                return "size_t len = strlen(s);  /* once, not in the loop condition */\n"
+                     + "for (size_t i = 0; i < len; i++) { ... }";
+        }
+    }
+
+    private String nestedLookupRewrite(String language) {
+        switch (language) {
+            case "Java":
+                return "Map<K, V> index = new HashMap<>();\n"
+                     + "for (V b : right) index.put(key(b), b);\n"
+                     + "for (V a : left) {\n"
+                     + "    V match = index.get(key(a));  // O(1) instead of an inner loop\n"
+                     + "}";
+            case "Python":
+                return "index = {key(b): b for b in right}\n"
+                     + "for a in left:\n"
+                     + "    match = index.get(key(a))  # O(1) instead of an inner loop";
+            case "JavaScript":
+                return "const index = new Map(right.map(b => [key(b), b]));\n"
+                     + "for (const a of left) {\n"
+                     + "    const match = index.get(key(a));  // O(1) instead of an inner loop\n"
+                     + "}";
+            case "C++":
+                return "std::unordered_map<K, V> index;\n"
+                     + "for (const auto& b : right) index[key(b)] = b;\n"
+                     + "for (const auto& a : left) {\n"
+                     + "    auto it = index.find(key(a));  // O(1) instead of an inner loop\n"
+                     + "}";
+            case "C":
+                return "qsort(right, m, sizeof *right, compare);\n"
+                     + "for (size_t i = 0; i < n; i++) {\n"
+                     + "    void *match = bsearch(&left[i], right, m, sizeof *right, compare);  /* O(log m) */\n"
+                     + "}";
+            default:
+                return "let index: HashMap<_, _> = right.iter().map(|b| (key(b), b)).collect();\n"
+                     + "for a in &left {\n"
+                     + "    let found = index.get(&key(a));  // O(1) instead of an inner loop\n"
+                     + "}";
+        }
+    }
+}
@@ -5,6 +5,7 @@ public class CodeAnalysis {
     private String spaceComplexity;
     private String explanation;
     private String optimizationSuggestions;
+    private boolean failed;
     
     public CodeAnalysis(String language, String code) {
         this.language = language;
@@ -60,6 +61,15 @@ public class CodeAnalysis {
         this.optimizationSuggestions = optimizationSuggestions;
     }
     
+    // True when the API call for this code failed and the other fields are placeholders
+    public boolean isFailed() {
+        return failed;
+    }
+    
+    public void setFailed(boolean failed) {
+        this.failed = failed;
+    }
+    
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
@@ -4,23 +4,29 @@ import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 public class CodeComplexityAnalyzer extends JFrame {
     private JTextArea codeInputArea;
-    private JTextArea resultArea;
+    private MarkdownResultPane resultArea;
     private JComboBox<String> languageSelector;
     private JButton analyzeButton;
     private JButton optimizeButton;
+    private JButton profileButton;
     private JToggleButton darkModeToggle;
     private boolean isDarkMode = false;
-    private ExecutorService executorService;
+    private PriorityTaskScheduler scheduler;
+    private ExecutorService localWorker;
+    private HotMethodProfiler hotMethodProfiler;
+    private AntiPatternDetector antiPatternDetector;
     
     // Colors for light and dark mode
     private final Color LIGHT_BG = new Color(255, 255, 255);
@@ -35,11 +41,24 @@ public class CodeComplexityAnalyzer extends JFrame {
     
     // Gemini API key - replace with your actual API key
     private static final String GEMINI_API_KEY = "YOUR_GEMINI_API_KEY";
-    private static final String GEMINI_API_URL = "https://generativelanguage.googleapis.com/v1beta/models/gemini-2.0-flash:generateContent";
+    private static final String GEMINI_API_URL = GeminiAPIService.API_URL;
+    
+    // Number of hottest methods from a flight recording that get analyzed
+    private static final int HOT_METHOD_LIMIT = 10;
+    private static final String PROFILE_BUTTON_TEXT = "Profile Hot Methods...";
     
     public CodeComplexityAnalyzer() {
-        // Initialize the executor service for handling API calls
-        executorService = Executors.newFixedThreadPool(2);
+        // Initialize the scheduler for handling API calls; button clicks run as INTERACTIVE
+        scheduler = new PriorityTaskScheduler();
+        // CPU-only work on the way to the screen (quick checks, markdown parsing) gets its
+        // own thread, so it never queues behind network calls in the interactive slots
+        localWorker = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "local-analysis");
+            thread.setDaemon(true);
+            return thread;
+        });
+        hotMethodProfiler = new HotMethodProfiler(new GeminiAPIService(GEMINI_API_KEY));
+        antiPatternDetector = new AntiPatternDetector();
         
         // Setup the UI
         setupUI();
@@ -84,6 +103,16 @@ public class CodeComplexityAnalyzer extends JFrame {
         });
         controlPanel.add(optimizeButton);
         
+        // Profile button
+        profileButton = new JButton(PROFILE_BUTTON_TEXT);
+        profileButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                profileHotMethods();
+            }
+        });
+        controlPanel.add(profileButton);
+        
         // Dark mode toggle
         darkModeToggle = new JToggleButton("Dark Mode");
         darkModeToggle.addActionListener(new ActionListener() {
@@ -108,9 +137,8 @@ public class CodeComplexityAnalyzer extends JFrame {
         codeScrollPane.setBorder(BorderFactory.createTitledBorder("Code Input"));
         
         // Result area
-        resultArea = new JTextArea();
-        resultArea.setEditable(false);
-        resultArea.setFont(new Font("Monospaced", Font.PLAIN, 14));
+        resultArea = new MarkdownResultPane(scheduler, localWorker);
+        resultArea.setFont(new Font("SansSerif", Font.PLAIN, 14));
         JScrollPane resultScrollPane = new JScrollPane(resultArea);
         resultScrollPane.setBorder(BorderFactory.createTitledBorder("Analysis Results"));
         
@@ -136,10 +164,10 @@ public class CodeComplexityAnalyzer extends JFrame {
         
         // Disable button and show progress
         analyzeButton.setEnabled(false);
-        resultArea.setText("Analyzing code complexity...");
+        resultArea.showMessage("Analyzing code complexity...");
         
         // Use a thread to avoid freezing the UI
-        executorService.submit(() -> {
+        scheduler.submit(PriorityTaskScheduler.Priority.INTERACTIVE, () -> {
             try {
                 String prompt = createComplexityAnalysisPrompt(code, language);
                 String response = callGeminiAPI(prompt);
@@ -149,18 +177,18 @@ public class CodeComplexityAnalyzer extends JFrame {
                 
                 // Update UI on EDT
                 SwingUtilities.invokeLater(() -> {
-                    resultArea.setText(formattedResult);
+                    resultArea.render(formattedResult);
                     analyzeButton.setEnabled(true);
                 });
             } catch (Exception e) {
-                handleAPIError(e);
+                handleAPIError(e, analyzeButton);
             }
         });
     }
     
     private void suggestOptimizations() {
-        String code = codeInputArea.getText().trim();
-        if (code.isEmpty()) {
+        String source = codeInputArea.getText();
+        if (source.trim().isEmpty()) {
             showError("Please enter code to optimize.");
             return;
         }
@@ -169,24 +197,93 @@ public class CodeComplexityAnalyzer extends JFrame {
         
         // Disable button and show progress
         optimizeButton.setEnabled(false);
-        resultArea.setText("Generating optimization suggestions...");
+        resultArea.showMessage("Running quick checks...");
         
-        // Use a thread to avoid freezing the UI
-        executorService.submit(() -> {
+        // Local rules need no network but can take a moment on long input, so they run on
+        // the local worker and their results are shown before the model is asked.
+        // They see the text as typed, so line numbers match the editor.
+        localWorker.execute(() -> {
+            AntiPatternDetector.Report localReport;
             try {
-                String prompt = createOptimizationPrompt(code, language);
-                String response = callGeminiAPI(prompt);
-                
-                // Process and format the response
-                String formattedResult = processOptimizationResponse(response);
+                localReport = antiPatternDetector.analyze(source, language);
+            } catch (RuntimeException e) {
+                handleAPIError(e, optimizeButton);
+                return;
+            }
+            String localResult = "# Optimization Suggestions\n\n" + localReport.toMarkdown();
+            
+            if (localReport.coversSnippet()) {
+                showOptimizationResult(localResult + "_The quick checks above account for every loop and call in this snippet, so the model was not asked._\n");
+                return;
+            }
+            if (GEMINI_API_KEY.equals("YOUR_GEMINI_API_KEY")) {
+                showOptimizationResult(localResult + "_No Gemini API key configured, showing quick checks only._\n");
+                return;
+            }
+            
+            SwingUtilities.invokeLater(() -> resultArea.render(localResult + "_Waiting for model suggestions..._\n"));
+            scheduler.submit(PriorityTaskScheduler.Priority.INTERACTIVE, () -> {
+                try {
+                    // Send the untrimmed text so the line numbers of the known issues still apply
+                    String prompt = createOptimizationPrompt(source, language, localReport.getFindings());
+                    String response = callGeminiAPI(prompt);
+                    
+                    // Process and format the response
+                    showOptimizationResult(localResult + processOptimizationResponse(response));
+                } catch (Exception e) {
+                    // Keep the quick checks visible when the model cannot be reached
+                    showOptimizationResult(localResult + "_Model suggestions unavailable: " + e.getMessage() + "_\n");
+                }
+            });
+        });
+    }
+    
+    private void showOptimizationResult(String result) {
+        // Update UI on EDT
+        SwingUtilities.invokeLater(() -> {
+            resultArea.render(result);
+            optimizeButton.setEnabled(true);
+        });
+    }
+    
+    private void profileHotMethods() {
+        // Pick the flight recording
+        JFileChooser recordingChooser = new JFileChooser();
+        recordingChooser.setDialogTitle("Select JDK Flight Recording (.jfr)");
+        if (recordingChooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File recording = recordingChooser.getSelectedFile();
+        
+        // Pick the source directory the sampled classes are mapped to
+        JFileChooser sourceChooser = new JFileChooser(recording.getParentFile());
+        sourceChooser.setDialogTitle("Select Java Source Directory");
+        sourceChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        if (sourceChooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File sourceRoot = sourceChooser.getSelectedFile();
+        
+        // Disable button and show progress on it, so results of other clicks stay visible
+        profileButton.setEnabled(false);
+        profileButton.setText("Reading recording...");
+        
+        // Many API calls in a row, so run as batch work behind interactive clicks
+        scheduler.submit(PriorityTaskScheduler.Priority.BATCH, () -> {
+            try {
+                List<HotMethodProfiler.HotMethod> hotMethods = hotMethodProfiler.analyze(
+                    recording.toPath(), sourceRoot.toPath(), HOT_METHOD_LIMIT,
+                    message -> SwingUtilities.invokeLater(() -> profileButton.setText(message)));
+                String report = hotMethodProfiler.formatReport(hotMethods);
                 
                 // Update UI on EDT
                 SwingUtilities.invokeLater(() -> {
-                    resultArea.setText(formattedResult);
-                    optimizeButton.setEnabled(true);
+                    resultArea.render(report);
+                    profileButton.setText(PROFILE_BUTTON_TEXT);
+                    profileButton.setEnabled(true);
                 });
             } catch (Exception e) {
-                handleAPIError(e);
+                handleAPIError(e, profileButton);
             }
         });
     }
@@ -199,11 +296,17 @@ public class CodeComplexityAnalyzer extends JFrame {
                "Here's the code:\n\n" + code;
     }
     
-    private String createOptimizationPrompt(String code, String language) {
+    private String createOptimizationPrompt(String code, String language, List<AntiPatternDetector.Finding> knownIssues) {
+        StringBuilder known = new StringBuilder();
+        for (AntiPatternDetector.Finding finding : knownIssues) {
+            known.append("- Line ").append(finding.getLine()).append(": ").append(finding.getRule().getTitle()).append("\n");
+        }
+        
         return "Review the following " + language + " code and suggest specific optimizations to improve its efficiency. " +
                "Focus on algorithmic improvements, not just style changes. " +
                "Explain why each suggestion would improve performance. " +
                "Include code examples where appropriate. " +
+               (known.length() > 0 ? "These issues have already been reported, so do not repeat them:\n" + known + "\n" : "") +
                "Here's the code:\n\n" + code;
     }
     
@@ -255,7 +358,7 @@ public class CodeComplexityAnalyzer extends JFrame {
                                                   .replace("\\n", "\n")
                                                   .replace("\\\"", "\"");
                 
-                return "COMPLEXITY ANALYSIS:\n\n" + extractedText;
+                return "# Complexity Analysis\n\n" + extractedText;
             } else {
                 return "Failed to parse API response. Please try again.";
             }
@@ -276,7 +379,7 @@ public class CodeComplexityAnalyzer extends JFrame {
                                                   .replace("\\n", "\n")
                                                   .replace("\\\"", "\"");
                 
-                return "OPTIMIZATION SUGGESTIONS:\n\n" + extractedText;
+                return "## Model Suggestions\n\n" + extractedText;
             } else {
                 return "Failed to parse API response. Please try again.";
             }
@@ -285,11 +388,14 @@ public class CodeComplexityAnalyzer extends JFrame {
         }
     }
     
-    private void handleAPIError(Exception e) {
+    // Only re-enable the button of the task that failed; the others may still be running
+    private void handleAPIError(Exception e, JButton button) {
         SwingUtilities.invokeLater(() -> {
-            resultArea.setText("Error: " + e.getMessage());
-            analyzeButton.setEnabled(true);
-            optimizeButton.setEnabled(true);
+            resultArea.showMessage("Error: " + e.getMessage());
+            if (button == profileButton) {
+                profileButton.setText(PROFILE_BUTTON_TEXT);
+            }
+            button.setEnabled(true);
         });
     }
     
@@ -364,7 +470,8 @@ public class CodeComplexityAnalyzer extends JFrame {
     // Clean up resources when done
     @Override
     public void dispose() {
-        executorService.shutdown();
+        scheduler.shutdown();
+        localWorker.shutdown();
         super.dispose();
     }
 }
\ No newline at end of file
@@ -5,13 +5,31 @@ import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class GeminiAPIService {
-    private static final String API_URL = "https://generativelanguage.googleapis.com/v1beta/models/gemini-flash-2:generateContent";
+    // Shared with CodeComplexityAnalyzer so every call goes to the same model
+    public static final String API_URL = "https://generativelanguage.googleapis.com/v1beta/models/gemini-2.0-flash:generateContent";
     private String apiKey;
     
+    // Rough prompt size limit for a packed request, estimated at 4 characters per token
+    private static final int PACK_TOKEN_BUDGET = 6000;
+    private static final int CHARS_PER_TOKEN = 4;
+    // A failed packed request is retried as a whole, waiting 1s, then 2s, ...
+    private static final int PACK_ATTEMPTS = 3;
+    private static final long RETRY_BACKOFF_MILLIS = 1000;
+    
+    // Section header the model is asked to put before each answer, e.g. "=== UNIT U3 ==="
+    private static final Pattern UNIT_HEADER_PATTERN = Pattern.compile("(?im)^[\\s#*]*=+\\s*UNIT\\s+([^=\\n]+?)\\s*=+[\\s*]*$");
+    private static final Pattern UNIT_ID_PATTERN = Pattern.compile("(?i)U\\d+");
+    
     public GeminiAPIService(String apiKey) {
         this.apiKey = apiKey;
     }
@@ -26,6 +44,163 @@ public class GeminiAPIService {
         return callAPI(prompt);
     }
     
+    // Analyze many small snippets with as few API calls as possible. Snippets are packed
+    // into prompts up to PACK_TOKEN_BUDGET, each under a stable ID, and the combined
+    // answer is split back per ID. Anything the model drops or merges is retried on its
+    // own; a packed request that fails outright is retried whole with backoff, then its
+    // units are marked failed. Results are returned in the same order as the input.
+    public List<CodeAnalysis> analyzeCodeComplexityPacked(List<CodeAnalysis> units) {
+        List<CodeAnalysis> results = new ArrayList<>();
+        for (CodeAnalysis unit : units) {
+            results.add(null);
+        }
+        
+        for (List<Integer> pack : packUnits(units)) {
+            List<Integer> retry = new ArrayList<>(pack);
+            if (pack.size() > 1) {
+                Map<Integer, String> sections;
+                try {
+                    sections = splitPackedResponse(callWithBackoff(createPackedComplexityAnalysisPrompt(units, pack)), pack);
+                } catch (Exception e) {
+                    // The request itself failed (rate limit, server error, timeout). Sending each
+                    // unit on its own would multiply requests just when the limit is being hit.
+                    for (int index : pack) {
+                        results.set(index, failedAnalysis(units.get(index), e));
+                    }
+                    continue;
+                }
+                for (Map.Entry<Integer, String> section : sections.entrySet()) {
+                    CodeAnalysis unit = units.get(section.getKey());
+                    results.set(section.getKey(),
+                                parseComplexityAnalysis(section.getValue(), unit.getLanguage(), unit.getCode()));
+                }
+                // Only units the model dropped or merged are asked about again
+                retry.removeAll(sections.keySet());
+            }
+            
+            for (int index : retry) {
+                results.set(index, analyzeSingle(units.get(index)));
+            }
+        }
+        
+        return results;
+    }
+    
+    private CodeAnalysis analyzeSingle(CodeAnalysis unit) {
+        try {
+            String response = analyzeCodeComplexity(unit.getCode(), unit.getLanguage());
+            return parseComplexityAnalysis(response, unit.getLanguage(), unit.getCode());
+        } catch (Exception e) {
+            // One failed call should not lose the rest of the batch
+            return failedAnalysis(unit, e);
+        }
+    }
+    
+    private CodeAnalysis failedAnalysis(CodeAnalysis unit, Exception e) {
+        CodeAnalysis failed = new CodeAnalysis(unit.getLanguage(), unit.getCode());
+        failed.setTimeComplexity("Not specified");
+        failed.setSpaceComplexity("Not specified");
+        failed.setExplanation("Analysis failed: " + e.getMessage());
+        failed.setFailed(true);
+        return failed;
+    }
+    
+    private String callWithBackoff(String prompt) throws Exception {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return callAPI(prompt);
+            } catch (Exception e) {
+                if (attempt == PACK_ATTEMPTS) {
+                    throw e;
+                }
+            }
+            Thread.sleep(RETRY_BACKOFF_MILLIS << (attempt - 1));
+        }
+    }
+    
+    // Group unit indexes greedily, in input order, so each group fits the token budget.
+    // A unit larger than the budget on its own gets a group to itself.
+    private List<List<Integer>> packUnits(List<CodeAnalysis> units) {
+        List<List<Integer>> packs = new ArrayList<>();
+        List<Integer> current = new ArrayList<>();
+        int currentTokens = 0;
+        
+        for (int i = 0; i < units.size(); i++) {
+            int tokens = units.get(i).getCode().length() / CHARS_PER_TOKEN + 1;
+            if (!current.isEmpty() && currentTokens + tokens > PACK_TOKEN_BUDGET) {
+                packs.add(current);
+                current = new ArrayList<>();
+                currentTokens = 0;
+            }
+            current.add(i);
+            currentTokens += tokens;
+        }
+        if (!current.isEmpty()) {
+            packs.add(current);
+        }
+        
+        return packs;
+    }
+    
+    // Split the combined answer on its UNIT headers. Sections naming more than one ID,
+    // unknown or repeated IDs, or lacking a time complexity are left out so they get retried.
+    private Map<Integer, String> splitPackedResponse(String response, List<Integer> pack) {
+        Map<Integer, String> sections = new HashMap<>();
+        Set<Integer> rejected = new HashSet<>();
+        
+        Matcher header = UNIT_HEADER_PATTERN.matcher(response);
+        List<int[]> bounds = new ArrayList<>();
+        List<String> headerIds = new ArrayList<>();
+        while (header.find()) {
+            bounds.add(new int[] {header.start(), header.end()});
+            headerIds.add(header.group(1));
+        }
+        
+        for (int i = 0; i < bounds.size(); i++) {
+            int bodyEnd = i + 1 < bounds.size() ? bounds.get(i + 1)[0] : response.length();
+            String body = response.substring(bounds.get(i)[1], bodyEnd).trim();
+            
+            List<Integer> ids = new ArrayList<>();
+            Matcher idMatcher = UNIT_ID_PATTERN.matcher(headerIds.get(i));
+            while (idMatcher.find()) {
+                ids.add(Integer.parseInt(idMatcher.group().substring(1)));
+            }
+            
+            if (ids.size() != 1) {
+                rejected.addAll(ids);
+                continue;
+            }
+            int index = ids.get(0);
+            if (!pack.contains(index) || sections.containsKey(index)
+                    || !body.matches("(?is).*Time\\s+Complexity.*")) {
+                rejected.add(index);
+                continue;
+            }
+            sections.put(index, body);
+        }
+        
+        sections.keySet().removeAll(rejected);
+        return sections;
+    }
+    
+    private String createPackedComplexityAnalysisPrompt(List<CodeAnalysis> units, List<Integer> pack) {
+        StringBuilder prompt = new StringBuilder();
+        prompt.append("Analyze each of the following code units separately and determine its time complexity and space complexity. ")
+              .append("Focus on the algorithm's efficiency, not just language-specific details. ")
+              .append("Answer every unit in its own section, starting with a header line of the form \"=== UNIT <id> ===\" ")
+              .append("using exactly the unit's id, and do not combine units. ")
+              .append("In each section give Time Complexity, Space Complexity, and a short Explanation.\n\n");
+        
+        for (int index : pack) {
+            CodeAnalysis unit = units.get(index);
+            prompt.append("=== UNIT U").append(index).append(" (").append(unit.getLanguage()).append(") ===\n")
+                  .append(unit.getCode()).append("\n")
+                  .append("=== END U").append(index).append(" ===\n\n");
+        }
+        
+        return prompt.toString();
+    }
+    
     private String createComplexityAnalysisPrompt(String code, String language) {
         return "Analyze the following " + language + " code and determine its time complexity and space complexity. " +
                "Provide a detailed analysis explaining why. " +
@@ -179,7 +354,7 @@ public class GeminiAPIService {
         Pattern timePattern = Pattern.compile("(?i)Time\\s+Complexity\\s*:?\\s*([^\\n]+)");
         Matcher timeMatcher = timePattern.matcher(analysisText);
         if (timeMatcher.find()) {
-            analysis.setTimeComplexity(timeMatcher.group(1).trim());
+            analysis.setTimeComplexity(complexityValue(timeMatcher.group(1)));
         } else {
             analysis.setTimeComplexity("Not specified");
         }
@@ -188,7 +363,7 @@ public class GeminiAPIService {
         Pattern spacePattern = Pattern.compile("(?i)Space\\s+Complexity\\s*:?\\s*([^\\n]+)");
         Matcher spaceMatcher = spacePattern.matcher(analysisText);
         if (spaceMatcher.find()) {
-            analysis.setSpaceComplexity(spaceMatcher.group(1).trim());
+            analysis.setSpaceComplexity(complexityValue(spaceMatcher.group(1)));
         } else {
             analysis.setSpaceComplexity("Not specified");
         }
@@ -244,6 +419,13 @@ public class GeminiAPIService {
     }
     
     // Parse optimization suggestions
+    // "**Time Complexity:** O(n^2)" leaves "** O(n^2)" after the label; drop the
+    // markdown and colon around the value
+    private String complexityValue(String raw) {
+        String value = raw.replaceAll("^[\\s*:]+|[\\s*]+$", "");
+        return value.isEmpty() ? "Not specified" : value;
+    }
+    
     public String parseOptimizationSuggestions(String optimizationText) {
         // For optimization text, we usually just want to return the entire response
         // since it's already structured by the AI model
@@ -0,0 +1,346 @@
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedMethod;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Profile-guided analysis: reads execution samples from a JDK Flight Recorder file,
+// finds the methods that burn the most CPU and sends only those to the analyzer.
+public class HotMethodProfiler {
+    // Frames from these packages are skipped so samples land on application code
+    private static final String[] RUNTIME_PACKAGES = {
+        "java.", "javax.", "jdk.", "sun.", "com.sun."
+    };
+
+    // Complexity classes from cheapest to most expensive, used to weight the ranking
+    private static final Pattern[] COMPLEXITY_CLASSES = {
+        Pattern.compile("(?i)O\\(\\s*1\\s*\\)"),
+        Pattern.compile("(?i)O\\(\\s*log\\s*\\(?n\\)?\\s*\\)"),
+        Pattern.compile("(?i)O\\(\\s*n\\s*\\)"),
+        Pattern.compile("(?i)O\\(\\s*n\\s*\\*?\\s*log\\s*\\(?n\\)?\\s*\\)"),
+        Pattern.compile("(?i)O\\(\\s*n\\s*(\\^\\s*2|\u00b2|\\*\\s*n)\\s*\\)"),
+        Pattern.compile("(?i)O\\(\\s*n\\s*(\\^\\s*3|\u00b3)\\s*\\)"),
+        Pattern.compile("(?i)O\\(\\s*2\\s*\\^\\s*n\\s*\\)"),
+        Pattern.compile("(?i)O\\(\\s*n\\s*!\\s*\\)")
+    };
+
+    private final GeminiAPIService apiService;
+
+    // A sampled method and, once analyzed, its complexity and ranking score
+    public static class HotMethod {
+        private final String className;
+        private final String methodName;
+        private long samples;
+        private double sampleShare;
+        private Path sourceFile;
+        private CodeAnalysis analysis;
+
+        public HotMethod(String className, String methodName) {
+            this.className = className;
+            this.methodName = methodName;
+        }
+
+        public String getClassName() {
+            return className;
+        }
+
+        public String getMethodName() {
+            return methodName;
+        }
+
+        public long getSamples() {
+            return samples;
+        }
+
+        public double getSampleShare() {
+            return sampleShare;
+        }
+
+        public Path getSourceFile() {
+            return sourceFile;
+        }
+
+        public CodeAnalysis getAnalysis() {
+            return analysis;
+        }
+
+        // Sample share times complexity class; methods that could not be analyzed score 0
+        public double getScore() {
+            if (analysis == null || analysis.isFailed()) {
+                return 0;
+            }
+            return sampleShare * (complexityRank(analysis.getTimeComplexity()) + 1);
+        }
+
+        public String getQualifiedName() {
+            return className + "." + methodName;
+        }
+    }
+
+    public HotMethodProfiler(GeminiAPIService apiService) {
+        this.apiService = apiService;
+    }
+
+    // Aggregate jdk.ExecutionSample events per method and return the top N by sample count.
+    // Each sample is credited to the first frame whose class isApplicationClass accepts,
+    // so library frames (Spring, Jackson, Netty, ...) pass it on to the caller's code.
+    public List<HotMethod> readHotMethods(Path recording, int topN,
+                                          Predicate<String> isApplicationClass) throws IOException {
+        Map<String, HotMethod> methods = new HashMap<>();
+        long totalSamples = 0;
+
+        try (RecordingFile file = new RecordingFile(recording)) {
+            while (file.hasMoreEvents()) {
+                RecordedEvent event = file.readEvent();
+                if (!"jdk.ExecutionSample".equals(event.getEventType().getName())) {
+                    continue;
+                }
+                RecordedStackTrace stackTrace = event.getStackTrace();
+                if (stackTrace == null) {
+                    continue;
+                }
+
+                totalSamples++;
+                RecordedMethod method = firstApplicationMethod(stackTrace, isApplicationClass);
+                if (method == null) {
+                    continue;
+                }
+                String className = method.getType().getName();
+                String methodName = method.getName();
+                HotMethod hot = methods.computeIfAbsent(className + "#" + methodName,
+                                                        key -> new HotMethod(className, methodName));
+                hot.samples++;
+            }
+        }
+
+        for (HotMethod hot : methods.values()) {
+            hot.sampleShare = totalSamples == 0 ? 0 : (double) hot.samples / totalSamples;
+        }
+
+        return methods.values().stream()
+                .sorted((a, b) -> Long.compare(b.samples, a.samples))
+                .limit(topN)
+                .collect(Collectors.toList());
+    }
+
+    // Read the recording, analyze the hot methods found under sourceRoot and rank them.
+    // Blocks on the API calls, so call it from a background task.
+    public List<HotMethod> analyze(Path recording, Path sourceRoot, int topN,
+                                   Consumer<String> progress) throws Exception {
+        SourceIndex sources = new SourceIndex(sourceRoot);
+        List<HotMethod> hotMethods = readHotMethods(recording, topN, className -> sources.find(className) != null);
+
+        List<HotMethod> found = new ArrayList<>();
+        List<CodeAnalysis> units = new ArrayList<>();
+        for (HotMethod hot : hotMethods) {
+            hot.sourceFile = sources.find(hot.getClassName());
+            String content = new String(Files.readAllBytes(hot.sourceFile), StandardCharsets.UTF_8);
+            String code = extractMethodSource(content, hot.getClassName(), hot.getMethodName());
+            if (code == null) {
+                continue;
+            }
+            found.add(hot);
+            units.add(new CodeAnalysis("Java", code));
+        }
+
+        // Hot methods are mostly short, so pack them into as few requests as possible
+        progress.accept("Analyzing " + units.size() + " methods...");
+        List<CodeAnalysis> results = apiService.analyzeCodeComplexityPacked(units);
+        for (int i = 0; i < found.size(); i++) {
+            found.get(i).analysis = results.get(i);
+        }
+
+        hotMethods.sort((a, b) -> Double.compare(b.getScore(), a.getScore()));
+        return hotMethods;
+    }
+
+    // Markdown report for the results view
+    public String formatReport(List<HotMethod> hotMethods) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("# Hot Method Analysis\n\n");
+        sb.append("Ranked by share of CPU samples times complexity class.\n\n");
+
+        int rank = 0;
+        for (HotMethod hot : hotMethods) {
+            sb.append("## ").append(++rank).append(". ").append(hot.getQualifiedName()).append("\n\n");
+            sb.append("- **CPU samples:** ").append(hot.getSamples())
+              .append(String.format(" (%.1f%%)", hot.getSampleShare() * 100)).append("\n");
+
+            sb.append("- **Source:** `").append(hot.getSourceFile().getFileName()).append("`\n");
+
+            CodeAnalysis analysis = hot.getAnalysis();
+            if (analysis == null) {
+                sb.append("- Method body not found in source\n\n");
+                continue;
+            }
+            sb.append("- **Time Complexity:** ").append(analysis.getTimeComplexity()).append("\n");
+            sb.append("- **Space Complexity:** ").append(analysis.getSpaceComplexity()).append("\n");
+            sb.append(String.format("- **Score:** %.3f", hot.getScore())).append("\n\n");
+            sb.append(analysis.getExplanation()).append("\n\n");
+        }
+
+        if (hotMethods.isEmpty()) {
+            sb.append("No execution samples from classes under the selected directory were found in the recording.\n");
+        }
+        return sb.toString();
+    }
+
+    // 0 for O(1) up to 7 for O(n!); unrecognised notations rank as linear
+    public static int complexityRank(String timeComplexity) {
+        if (timeComplexity == null) {
+            return 2;
+        }
+        int rank = -1;
+        for (int i = 0; i < COMPLEXITY_CLASSES.length; i++) {
+            // Take the most expensive class mentioned, e.g. the worst case
+            if (COMPLEXITY_CLASSES[i].matcher(timeComplexity).find()) {
+                rank = i;
+            }
+        }
+        return rank < 0 ? 2 : rank;
+    }
+
+    private RecordedMethod firstApplicationMethod(RecordedStackTrace stackTrace,
+                                                  Predicate<String> isApplicationClass) {
+        for (RecordedFrame frame : stackTrace.getFrames()) {
+            if (!frame.isJavaFrame() || frame.getMethod() == null) {
+                continue;
+            }
+            String className = frame.getMethod().getType().getName();
+            if (!isRuntimeClass(className) && isApplicationClass.test(className)) {
+                return frame.getMethod();
+            }
+        }
+        return null;
+    }
+
+    private boolean isRuntimeClass(String className) {
+        for (String prefix : RUNTIME_PACKAGES) {
+            if (className.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Maps class names to .java files under a source root. Lookups are cached because
+    // every frame of every sample asks, and most frames repeat.
+    private static class SourceIndex {
+        private final Map<String, List<Path>> byFileName = new HashMap<>();
+        private final Map<String, Optional<Path>> cache = new HashMap<>();
+
+        SourceIndex(Path sourceRoot) throws IOException {
+            try (Stream<Path> paths = Files.walk(sourceRoot)) {
+                paths.filter(path -> path.toString().endsWith(".java"))
+                     .forEach(path -> byFileName.computeIfAbsent(path.getFileName().toString(),
+                                                                 key -> new ArrayList<>()).add(path));
+            }
+        }
+
+        // com.example.Foo$Bar lives in com/example/Foo.java; the source root may be any
+        // directory above the package root, e.g. a multi-module checkout
+        Path find(String className) {
+            return cache.computeIfAbsent(className, key -> {
+                String outerClass = key.contains("$") ? key.substring(0, key.indexOf('$')) : key;
+                String relativePath = outerClass.replace('.', '/') + ".java";
+                String fileName = relativePath.substring(relativePath.lastIndexOf('/') + 1);
+                for (Path source : byFileName.getOrDefault(fileName, Collections.emptyList())) {
+                    String path = source.toString().replace('\\', '/');
+                    if (path.endsWith("/" + relativePath) || path.equals(relativePath)) {
+                        return Optional.of(source);
+                    }
+                }
+                return Optional.empty();
+            }).orElse(null);
+        }
+    }
+
+    // Find the method declaration by name and return it up to its closing brace.
+    // Overloads are not told apart; the first declaration with a body wins.
+    String extractMethodSource(String content, String className, String methodName) {
+        Pattern declaration;
+        if ("<init>".equals(methodName)) {
+            // Constructors have no return type, so anchor on the start of the line. That also
+            // keeps "new Foo() {" (an anonymous class) from matching, and allows package-private
+            // constructors with no modifier at all.
+            String simpleName = className.substring(Math.max(className.lastIndexOf('.'), className.lastIndexOf('$')) + 1);
+            declaration = Pattern.compile("(?m)^[ \\t]*(?:(?:public|protected|private)\\s+)?" + Pattern.quote(simpleName)
+                                          + "\\s*\\([^;{)]*\\)\\s*(?:throws\\s+[\\w.,\\s]+)?\\{");
+        } else {
+            String name = methodName;
+            if (name.startsWith("lambda$")) {
+                // lambda$enclosingMethod$0 was compiled from a lambda inside enclosingMethod
+                String[] parts = name.split("\\$");
+                if (parts.length > 1) {
+                    name = parts[1];
+                }
+            }
+            // A return type right before the name (not a keyword such as return or new), and
+            // only a throws clause between the parameters and the body, so call sites like
+            // "return compute(items).stream().map(x -> {" never look like a declaration
+            declaration = Pattern.compile("(?<![\\w$.])(?!(?:return|throw|else|yield|case|new|await|assert)\\b)"
+                                          + "[\\w$.]+(?:\\s*<[^;{()]*>)?(?:\\s*\\[\\s*\\])*\\s+" + Pattern.quote(name)
+                                          + "\\s*\\([^;{)]*\\)\\s*(?:throws\\s+[\\w.,\\s]+)?\\{");
+        }
+        Matcher matcher = declaration.matcher(content);
+        if (!matcher.find()) {
+            return null;
+        }
+
+        int start = content.lastIndexOf('\n', matcher.start()) + 1;
+        int end = findClosingBrace(content, matcher.end() - 1);
+        return end < 0 ? null : content.substring(start, end + 1);
+    }
+
+    // Match braces from openPos, skipping string/char literals and comments
+    private int findClosingBrace(String content, int openPos) {
+        int depth = 0;
+        for (int i = openPos; i < content.length(); i++) {
+            char c = content.charAt(i);
+            if (c == '"' || c == '\'') {
+                // Skip to the matching quote, honouring escapes
+                for (i++; i < content.length() && content.charAt(i) != c; i++) {
+                    if (content.charAt(i) == '\\') {
+                        i++;
+                    }
+                }
+            } else if (c == '/' && i + 1 < content.length() && content.charAt(i + 1) == '/') {
+                i = content.indexOf('\n', i);
+                if (i < 0) {
+                    return -1;
+                }
+            } else if (c == '/' && i + 1 < content.length() && content.charAt(i + 1) == '*') {
+                i = content.indexOf("*/", i + 2);
+                if (i < 0) {
+                    return -1;
+                }
+                i++;
+            } else if (c == '{') {
+                depth++;
+            } else if (c == '}') {
+                depth--;
+                if (depth == 0) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,327 @@
+import javax.swing.text.AttributeSet;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.text.StyleConstants;
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Parses model output (markdown) into styled blocks. Nothing in here touches
+// Swing components, so it is safe to run on a background thread.
+public class MarkdownRenderer {
+    public enum BlockType { HEADING, PARAGRAPH, LIST_ITEM, CODE, RULE }
+
+    // Attribute sets are built once and only ever read afterwards
+    private static final SimpleAttributeSet PLAIN = new SimpleAttributeSet();
+    private static final SimpleAttributeSet BOLD = new SimpleAttributeSet();
+    private static final SimpleAttributeSet ITALIC = new SimpleAttributeSet();
+    private static final SimpleAttributeSet INLINE_CODE = new SimpleAttributeSet();
+    private static final SimpleAttributeSet CODE = new SimpleAttributeSet();
+    private static final SimpleAttributeSet RULE = new SimpleAttributeSet();
+    private static final SimpleAttributeSet[] HEADINGS = new SimpleAttributeSet[6];
+
+    private static final SimpleAttributeSet KEYWORD = new SimpleAttributeSet();
+    private static final SimpleAttributeSet STRING = new SimpleAttributeSet();
+    private static final SimpleAttributeSet COMMENT = new SimpleAttributeSet();
+    private static final SimpleAttributeSet NUMBER = new SimpleAttributeSet();
+
+    static {
+        StyleConstants.setFontFamily(PLAIN, "SansSerif");
+        StyleConstants.setFontSize(PLAIN, 14);
+
+        BOLD.addAttributes(PLAIN);
+        StyleConstants.setBold(BOLD, true);
+
+        ITALIC.addAttributes(PLAIN);
+        StyleConstants.setItalic(ITALIC, true);
+
+        StyleConstants.setFontFamily(INLINE_CODE, "Monospaced");
+        StyleConstants.setFontSize(INLINE_CODE, 13);
+
+        StyleConstants.setFontFamily(CODE, "Monospaced");
+        StyleConstants.setFontSize(CODE, 13);
+
+        RULE.addAttributes(PLAIN);
+        StyleConstants.setForeground(RULE, Color.GRAY);
+
+        int[] headingSizes = {22, 19, 17, 15, 14, 14};
+        for (int i = 0; i < HEADINGS.length; i++) {
+            HEADINGS[i] = new SimpleAttributeSet(PLAIN);
+            StyleConstants.setFontSize(HEADINGS[i], headingSizes[i]);
+            StyleConstants.setBold(HEADINGS[i], true);
+        }
+
+        // Mid-tone colors so highlighted code reads on both light and dark themes
+        StyleConstants.setForeground(KEYWORD, new Color(86, 130, 214));
+        StyleConstants.setBold(KEYWORD, true);
+        StyleConstants.setForeground(STRING, new Color(196, 120, 60));
+        StyleConstants.setForeground(COMMENT, new Color(128, 128, 128));
+        StyleConstants.setItalic(COMMENT, true);
+        StyleConstants.setForeground(NUMBER, new Color(80, 160, 110));
+    }
+
+    // Keywords for all supported languages; overlap between them is harmless
+    private static final Set<String> KEYWORDS = new HashSet<>(Arrays.asList(
+        "abstract", "as", "async", "await", "bool", "boolean", "break", "byte", "case", "catch",
+        "char", "class", "const", "continue", "def", "default", "del", "do", "double", "elif",
+        "else", "enum", "except", "extends", "false", "False", "final", "finally", "float", "fn",
+        "for", "from", "function", "if", "impl", "implements", "import", "in", "int", "interface",
+        "is", "lambda", "let", "long", "loop", "match", "mod", "mut", "new", "None", "not", "null",
+        "or", "and", "package", "pass", "private", "protected", "pub", "public", "raise", "return",
+        "self", "short", "static", "struct", "super", "switch", "this", "throw", "throws", "trait",
+        "true", "True", "try", "typedef", "unsigned", "use", "var", "void", "while", "with", "yield"
+    ));
+
+    private static final Pattern HEADING_PATTERN = Pattern.compile("^(#{1,6})\\s+(.*)$");
+    private static final Pattern LIST_PATTERN = Pattern.compile("^\\s*([-*+]|\\d+[.)])\\s+(.*)$");
+    private static final Pattern RULE_PATTERN = Pattern.compile("^\\s*(?:-{3,}|\\*{3,}|_{3,})\\s*$");
+    private static final Pattern INLINE_PATTERN = Pattern.compile("\\*\\*(.+?)\\*\\*|`([^`]+)`|\\*([^*\\s][^*]*?)\\*");
+    private static final Pattern TOKEN_PATTERN = Pattern.compile(
+        "(//[^\\n]*|#[^\\n]*|/\\*.*?\\*/)" +           // comments
+        "|(\"(?:\\\\.|[^\"\\\\\\n])*\"|'(?:\\\\.|[^'\\\\\\n])*')" + // string and char literals
+        "|\\b(\\d+(?:\\.\\d+)?)\\b" +                  // numbers
+        "|\\b([A-Za-z_][A-Za-z0-9_]*)\\b",             // identifiers and keywords
+        Pattern.DOTALL);
+
+    // A run of text sharing one set of attributes
+    public static class Run {
+        private final String text;
+        private final AttributeSet attributes;
+
+        public Run(String text, AttributeSet attributes) {
+            this.text = text;
+            this.attributes = attributes;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public AttributeSet getAttributes() {
+            return attributes;
+        }
+    }
+
+    // A highlighted span relative to the start of a code block
+    public static class Span {
+        private final int start;
+        private final int length;
+        private final AttributeSet attributes;
+
+        public Span(int start, int length, AttributeSet attributes) {
+            this.start = start;
+            this.length = length;
+            this.attributes = attributes;
+        }
+
+        public int getStart() {
+            return start;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        public AttributeSet getAttributes() {
+            return attributes;
+        }
+    }
+
+    // One top-level markdown block together with its styled runs
+    public static class Block {
+        private final BlockType type;
+        private final int level;
+        // List marker as written, e.g. "-" or "2."; empty for other blocks
+        private final String marker;
+        private final String text;
+        private final List<Run> runs;
+        private final int length;
+
+        private Block(BlockType type, int level, String marker, String text, List<Run> runs) {
+            this.type = type;
+            this.level = level;
+            this.marker = marker;
+            this.text = text;
+            this.runs = runs;
+            int total = 0;
+            for (Run run : runs) {
+                total += run.getText().length();
+            }
+            this.length = total;
+        }
+
+        public BlockType getType() {
+            return type;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public List<Run> getRuns() {
+            return runs;
+        }
+
+        // Number of characters this block occupies in the document
+        public int getLength() {
+            return length;
+        }
+
+        // Blocks are compared by source so unchanged blocks can be kept in place
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Block)) return false;
+            Block other = (Block) o;
+            return type == other.type && level == other.level && marker.equals(other.marker)
+                   && text.equals(other.text);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(type, level, marker, text);
+        }
+    }
+
+    public List<Block> parse(String markdown) {
+        List<Block> blocks = new ArrayList<>();
+        String[] lines = markdown.replace("\r\n", "\n").split("\n", -1);
+        StringBuilder paragraph = new StringBuilder();
+        StringBuilder code = null;
+
+        for (String line : lines) {
+            if (code != null) {
+                if (line.trim().startsWith("```")) {
+                    blocks.add(codeBlock(code.toString()));
+                    code = null;
+                } else {
+                    code.append(line).append("\n");
+                }
+                continue;
+            }
+
+            if (line.trim().startsWith("```")) {
+                flushParagraph(blocks, paragraph);
+                code = new StringBuilder();
+                continue;
+            }
+
+            if (line.trim().isEmpty()) {
+                flushParagraph(blocks, paragraph);
+                continue;
+            }
+
+            Matcher heading = HEADING_PATTERN.matcher(line);
+            if (heading.matches()) {
+                flushParagraph(blocks, paragraph);
+                int level = heading.group(1).length();
+                blocks.add(inlineBlock(BlockType.HEADING, level, "", heading.group(2).trim(), HEADINGS[level - 1]));
+                continue;
+            }
+
+            if (RULE_PATTERN.matcher(line).matches()) {
+                flushParagraph(blocks, paragraph);
+                List<Run> runs = new ArrayList<>();
+                runs.add(new Run("\u2500\u2500\u2500\u2500\u2500\u2500\u2500\u2500\u2500\u2500\n", RULE));
+                blocks.add(new Block(BlockType.RULE, 0, "", "", runs));
+                continue;
+            }
+
+            Matcher listItem = LIST_PATTERN.matcher(line);
+            if (listItem.matches()) {
+                flushParagraph(blocks, paragraph);
+                blocks.add(inlineBlock(BlockType.LIST_ITEM, 0, listItem.group(1), listItem.group(2).trim(), PLAIN));
+                continue;
+            }
+
+            if (paragraph.length() > 0) {
+                paragraph.append(" ");
+            }
+            paragraph.append(line.trim());
+        }
+
+        // An unterminated fence still renders as code
+        if (code != null) {
+            blocks.add(codeBlock(code.toString()));
+        }
+        flushParagraph(blocks, paragraph);
+
+        return blocks;
+    }
+
+    // Lex a code block into highlight spans. Runs off the EDT; spans are applied later.
+    public List<Span> highlight(String code) {
+        List<Span> spans = new ArrayList<>();
+        Matcher matcher = TOKEN_PATTERN.matcher(code);
+        while (matcher.find()) {
+            if (matcher.group(1) != null) {
+                spans.add(new Span(matcher.start(), matcher.end() - matcher.start(), COMMENT));
+            } else if (matcher.group(2) != null) {
+                spans.add(new Span(matcher.start(), matcher.end() - matcher.start(), STRING));
+            } else if (matcher.group(3) != null) {
+                spans.add(new Span(matcher.start(), matcher.end() - matcher.start(), NUMBER));
+            } else if (KEYWORDS.contains(matcher.group(4))) {
+                spans.add(new Span(matcher.start(), matcher.end() - matcher.start(), KEYWORD));
+            }
+        }
+        return spans;
+    }
+
+    private void flushParagraph(List<Block> blocks, StringBuilder paragraph) {
+        if (paragraph.length() > 0) {
+            blocks.add(inlineBlock(BlockType.PARAGRAPH, 0, "", paragraph.toString(), PLAIN));
+            paragraph.setLength(0);
+        }
+    }
+
+    private Block codeBlock(String code) {
+        List<Run> runs = new ArrayList<>();
+        runs.add(new Run(code + "\n", CODE));
+        return new Block(BlockType.CODE, 0, "", code, runs);
+    }
+
+    private Block inlineBlock(BlockType type, int level, String marker, String text, AttributeSet base) {
+        List<Run> runs = new ArrayList<>();
+        if (type == BlockType.LIST_ITEM) {
+            // Bullets become a dot; numbered steps keep their number
+            boolean ordered = Character.isDigit(marker.charAt(0));
+            runs.add(new Run("  " + (ordered ? marker : "\u2022") + " ", base));
+        }
+
+        Matcher matcher = INLINE_PATTERN.matcher(text);
+        int last = 0;
+        while (matcher.find()) {
+            if (matcher.start() > last) {
+                runs.add(new Run(text.substring(last, matcher.start()), base));
+            }
+            if (matcher.group(1) != null) {
+                runs.add(new Run(matcher.group(1), derive(base, BOLD)));
+            } else if (matcher.group(2) != null) {
+                runs.add(new Run(matcher.group(2), INLINE_CODE));
+            } else {
+                runs.add(new Run(matcher.group(3), derive(base, ITALIC)));
+            }
+            last = matcher.end();
+        }
+        // List items sit on consecutive lines; other blocks are followed by a blank line
+        runs.add(new Run(text.substring(last) + (type == BlockType.LIST_ITEM ? "\n" : "\n\n"), base));
+
+        return new Block(type, level, marker, text, runs);
+    }
+
+    private AttributeSet derive(AttributeSet base, AttributeSet overlay) {
+        if (base == PLAIN) {
+            return overlay;
+        }
+        SimpleAttributeSet combined = new SimpleAttributeSet(base);
+        combined.addAttributes(overlay);
+        // Keep the heading size when bold/italic text appears inside a heading
+        StyleConstants.setFontSize(combined, StyleConstants.getFontSize(base));
+        return combined;
+    }
+}
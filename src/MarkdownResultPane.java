@@ -0,0 +1,216 @@
+import javax.swing.*;
+import javax.swing.event.ChangeListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.StyledDocument;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+// Results view that renders markdown. Parsing and styling happen on a background
+// thread; the EDT only swaps in the blocks that changed, a few at a time, and
+// code blocks are highlighted once they scroll into view.
+public class MarkdownResultPane extends JTextPane {
+    // Blocks inserted per EDT event, so a long report never stalls the UI in one go
+    private static final int BLOCKS_PER_BATCH = 8;
+
+    private final PriorityTaskScheduler scheduler;
+    // Parsing is short CPU work on the way to the screen, so it runs on a thread of its
+    // own instead of queueing behind network calls that hold the interactive slots
+    private final ExecutorService parser;
+    private final MarkdownRenderer renderer = new MarkdownRenderer();
+
+    // Blocks currently in the document, in order. Only touched on the EDT.
+    private final List<MarkdownRenderer.Block> rendered = new ArrayList<>();
+    private final List<Boolean> highlighted = new ArrayList<>();
+
+    // Highlights code as it scrolls into view; attached while the pane sits in a viewport
+    private final ChangeListener viewportListener = e -> highlightVisibleCode();
+    private JViewport viewport;
+
+    // Bumped for every new render so stale batches can be dropped. Only touched on the EDT.
+    private int generation = 0;
+
+    public MarkdownResultPane(PriorityTaskScheduler scheduler, ExecutorService parser) {
+        this.scheduler = scheduler;
+        this.parser = parser;
+        setEditable(false);
+    }
+
+    // Plain status text such as "Analyzing...". Cheap enough to set directly.
+    public void showMessage(String message) {
+        generation++;
+        rendered.clear();
+        highlighted.clear();
+        setText(message);
+    }
+
+    // Parse and style off the EDT, then merge the result into the document
+    public void render(String markdown) {
+        int renderGeneration = ++generation;
+        parser.execute(() -> {
+            List<MarkdownRenderer.Block> blocks = renderer.parse(markdown);
+            SwingUtilities.invokeLater(() -> {
+                if (renderGeneration == generation) {
+                    applyBlocks(blocks, renderGeneration);
+                }
+            });
+        });
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        // Highlight code blocks as the user scrolls them into view
+        Container parent = getParent();
+        if (parent instanceof JViewport) {
+            viewport = (JViewport) parent;
+            viewport.addChangeListener(viewportListener);
+        }
+    }
+
+    @Override
+    public void removeNotify() {
+        if (viewport != null) {
+            viewport.removeChangeListener(viewportListener);
+            viewport = null;
+        }
+        super.removeNotify();
+    }
+
+    private void applyBlocks(List<MarkdownRenderer.Block> blocks, int renderGeneration) {
+        // The document is still the status message; start from an empty one
+        if (rendered.isEmpty()) {
+            setText("");
+        }
+
+        // Keep the unchanged blocks at the start and end, replace only the middle
+        int prefix = 0;
+        while (prefix < rendered.size() && prefix < blocks.size()
+                && rendered.get(prefix).equals(blocks.get(prefix))) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < rendered.size() - prefix && suffix < blocks.size() - prefix
+                && rendered.get(rendered.size() - 1 - suffix).equals(blocks.get(blocks.size() - 1 - suffix))) {
+            suffix++;
+        }
+
+        StyledDocument doc = getStyledDocument();
+        int start = offsetOf(prefix);
+        int end = offsetOf(rendered.size() - suffix);
+        try {
+            doc.remove(start, end - start);
+        } catch (BadLocationException e) {
+            // Offsets are derived from the document itself; fall back to a full redraw
+            rendered.clear();
+            highlighted.clear();
+            setText("");
+            prefix = 0;
+            suffix = 0;
+        }
+        rendered.subList(prefix, rendered.size() - suffix).clear();
+        highlighted.subList(prefix, highlighted.size() - suffix).clear();
+
+        insertBatch(blocks.subList(prefix, blocks.size() - suffix), 0, prefix, renderGeneration);
+    }
+
+    private void insertBatch(List<MarkdownRenderer.Block> changed, int from, int index, int renderGeneration) {
+        if (renderGeneration != generation) {
+            return;
+        }
+
+        StyledDocument doc = getStyledDocument();
+        int to = Math.min(from + BLOCKS_PER_BATCH, changed.size());
+        int offset = offsetOf(index);
+        try {
+            for (int i = from; i < to; i++) {
+                MarkdownRenderer.Block block = changed.get(i);
+                for (MarkdownRenderer.Run run : block.getRuns()) {
+                    doc.insertString(offset, run.getText(), run.getAttributes());
+                    offset += run.getText().length();
+                }
+                rendered.add(index, block);
+                highlighted.add(index, false);
+                index++;
+            }
+        } catch (BadLocationException e) {
+            setText("Error rendering results: " + e.getMessage());
+            rendered.clear();
+            highlighted.clear();
+            return;
+        }
+
+        if (from == 0) {
+            setCaretPosition(0);
+        }
+        highlightVisibleCode();
+
+        if (to < changed.size()) {
+            int nextIndex = index;
+            SwingUtilities.invokeLater(() -> insertBatch(changed, to, nextIndex, renderGeneration));
+        }
+    }
+
+    private void highlightVisibleCode() {
+        Container parent = getParent();
+        if (!(parent instanceof JViewport) || rendered.isEmpty()) {
+            return;
+        }
+
+        Rectangle view = ((JViewport) parent).getViewRect();
+        int visibleStart = viewToModel2D(new Point(view.x, view.y));
+        int visibleEnd = viewToModel2D(new Point(view.x + view.width, view.y + view.height));
+        if (visibleStart < 0 || visibleEnd < 0) {
+            return;
+        }
+
+        int offset = 0;
+        for (int i = 0; i < rendered.size() && offset <= visibleEnd; i++) {
+            MarkdownRenderer.Block block = rendered.get(i);
+            int blockEnd = offset + block.getLength();
+            if (block.getType() == MarkdownRenderer.BlockType.CODE && !highlighted.get(i) && blockEnd >= visibleStart) {
+                highlighted.set(i, true);
+                scheduleHighlight(block);
+            }
+            offset = blockEnd;
+        }
+    }
+
+    private void scheduleHighlight(MarkdownRenderer.Block block) {
+        // Highlighting is cosmetic, so it must not hold up the next click
+        scheduler.submit(PriorityTaskScheduler.Priority.SPECULATIVE, () -> {
+            List<MarkdownRenderer.Span> spans = renderer.highlight(block.getText());
+            SwingUtilities.invokeLater(() -> {
+                // The block may have moved or been replaced since the lexing started
+                int index = indexOfInstance(block);
+                if (index < 0) {
+                    return;
+                }
+                int blockStart = offsetOf(index);
+                StyledDocument doc = getStyledDocument();
+                for (MarkdownRenderer.Span span : spans) {
+                    doc.setCharacterAttributes(blockStart + span.getStart(), span.getLength(),
+                                               span.getAttributes(), false);
+                }
+            });
+        });
+    }
+
+    private int indexOfInstance(MarkdownRenderer.Block block) {
+        for (int i = 0; i < rendered.size(); i++) {
+            if (rendered.get(i) == block) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int offsetOf(int index) {
+        int offset = 0;
+        for (int i = 0; i < index; i++) {
+            offset += rendered.get(i).getLength();
+        }
+        return offset;
+    }
+}
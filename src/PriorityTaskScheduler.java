@@ -0,0 +1,191 @@
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+// Schedules background work in priority classes instead of one FIFO queue.
+// Interactive work always goes first and has its own threads, so a button click
+// never waits behind queued batch analyses. Speculative and batch work split the
+// background threads by their recent share, and anything left waiting too long is
+// promoted a class when picking what runs next. Promotion never lifts a class's cap.
+public class PriorityTaskScheduler {
+    public enum Priority {
+        // maxConcurrent, share (share only applies to the background classes)
+        INTERACTIVE(2, 0),
+        SPECULATIVE(2, 3),
+        BATCH(1, 1);
+
+        private final int maxConcurrent;
+        private final int share;
+
+        Priority(int maxConcurrent, int share) {
+            this.maxConcurrent = maxConcurrent;
+            this.share = share;
+        }
+
+        public int getMaxConcurrent() {
+            return maxConcurrent;
+        }
+
+        public int getShare() {
+            return share;
+        }
+    }
+
+    // How long a task may wait before it is treated as one class higher
+    private static final long AGING_MILLIS = 5000;
+
+    // Threads shared by SPECULATIVE and BATCH on top of the interactive ones
+    private static final int BACKGROUND_THREADS = 2;
+
+    // Shares are measured over recent dispatches; older ones count half per interval
+    private static final long USAGE_HALF_LIFE_MILLIS = 10000;
+
+    private final Map<Priority, ArrayDeque<QueuedTask>> queues = new EnumMap<>(Priority.class);
+    private final Map<Priority, Integer> running = new EnumMap<>(Priority.class);
+    private final Map<Priority, Double> recentUsage = new EnumMap<>(Priority.class);
+    private long usageUpdatedAt = System.currentTimeMillis();
+    private final ExecutorService workers;
+    private boolean shutdown = false;
+
+    private static class QueuedTask {
+        private final FutureTask<?> future;
+        private final Priority priority;
+        private final long enqueuedAt;
+
+        QueuedTask(FutureTask<?> future, Priority priority) {
+            this.future = future;
+            this.priority = priority;
+            this.enqueuedAt = System.currentTimeMillis();
+        }
+
+        // Promote one class per aging interval. This only affects which task is picked
+        // next; the task still runs in, and counts against, its own class. Background
+        // work never ages into INTERACTIVE so it cannot jump ahead of user clicks.
+        Priority effectivePriority(long now) {
+            if (priority == Priority.INTERACTIVE) {
+                return priority;
+            }
+            long steps = (now - enqueuedAt) / AGING_MILLIS;
+            int ordinal = (int) Math.max(Priority.SPECULATIVE.ordinal(), priority.ordinal() - steps);
+            return Priority.values()[ordinal];
+        }
+    }
+
+    public PriorityTaskScheduler() {
+        for (Priority priority : Priority.values()) {
+            queues.put(priority, new ArrayDeque<>());
+            running.put(priority, 0);
+            recentUsage.put(priority, 0.0);
+        }
+        // One thread per slot, so every admitted task starts immediately
+        workers = Executors.newFixedThreadPool(Priority.INTERACTIVE.getMaxConcurrent() + BACKGROUND_THREADS);
+    }
+
+    public Future<?> submit(Priority priority, Runnable task) {
+        return enqueue(priority, new FutureTask<Void>(task, null));
+    }
+
+    public <T> Future<T> submit(Priority priority, Callable<T> task) {
+        return enqueue(priority, new FutureTask<T>(task));
+    }
+
+    public synchronized void shutdown() {
+        shutdown = true;
+        for (ArrayDeque<QueuedTask> queue : queues.values()) {
+            for (QueuedTask queued : queue) {
+                queued.future.cancel(false);
+            }
+            queue.clear();
+        }
+        workers.shutdown();
+    }
+
+    private synchronized <T> Future<T> enqueue(Priority priority, FutureTask<T> future) {
+        if (shutdown) {
+            throw new IllegalStateException("Scheduler has been shut down");
+        }
+        queues.get(priority).addLast(new QueuedTask(future, priority));
+        dispatch();
+        return future;
+    }
+
+    // Start as many queued tasks as there are free slots. Called with the lock held
+    // whenever a task is queued or finishes.
+    private void dispatch() {
+        long now = System.currentTimeMillis();
+        decayUsage(now);
+        QueuedTask next;
+        while ((next = pickNext(now)) != null) {
+            Priority slot = next.priority;
+            queues.get(slot).removeFirst();
+            if (next.future.isCancelled()) {
+                continue;
+            }
+            running.put(slot, running.get(slot) + 1);
+            recentUsage.put(slot, recentUsage.get(slot) + 1);
+
+            QueuedTask task = next;
+            workers.execute(() -> {
+                try {
+                    task.future.run();
+                } finally {
+                    finished(slot);
+                }
+            });
+        }
+    }
+
+    private synchronized void finished(Priority slot) {
+        running.put(slot, running.get(slot) - 1);
+        if (!shutdown) {
+            dispatch();
+        }
+    }
+
+    // Interactive work pre-empts everything still queued. Otherwise pick the highest
+    // effective priority, then the class furthest below its recent share, then the oldest.
+    private QueuedTask pickNext(long now) {
+        QueuedTask best = null;
+        Priority bestRank = null;
+        double bestUsage = Double.MAX_VALUE;
+
+        for (Priority priority : Priority.values()) {
+            QueuedTask head = queues.get(priority).peekFirst();
+            if (head == null || running.get(priority) >= priority.getMaxConcurrent()) {
+                continue;
+            }
+            if (priority == Priority.INTERACTIVE) {
+                return head;
+            }
+            if (running.get(Priority.SPECULATIVE) + running.get(Priority.BATCH) >= BACKGROUND_THREADS) {
+                continue;
+            }
+
+            Priority rank = head.effectivePriority(now);
+            double usage = recentUsage.get(priority) / priority.getShare();
+            int byRank = best == null ? -1 : rank.compareTo(bestRank);
+            if (byRank < 0
+                    || (byRank == 0 && usage < bestUsage)
+                    || (byRank == 0 && usage == bestUsage && head.enqueuedAt < best.enqueuedAt)) {
+                best = head;
+                bestRank = rank;
+                bestUsage = usage;
+            }
+        }
+        return best;
+    }
+
+    // Fade old dispatches so shares reflect recent load rather than the whole session
+    private void decayUsage(long now) {
+        double factor = Math.pow(0.5, (double) (now - usageUpdatedAt) / USAGE_HALF_LIFE_MILLIS);
+        for (Priority priority : Priority.values()) {
+            recentUsage.put(priority, recentUsage.get(priority) * factor);
+        }
+        usageUpdatedAt = now;
+    }
+}